@@ -0,0 +1,108 @@
+import java.util.* ;
+
+/**
+ * Streaming anomaly detection (--anomalies): a rolling baseline per destination and operation type, the
+ * EWMA of the speed, duration and resume count of its transfers, taken in the order they are reported.
+ * A transfer is flagged (as a warning, right away) when its speed is the given percentage or more below the
+ * baseline, when it takes as much longer, when its resumes jump above the baseline, and on each run of
+ * repeated failures. A few numbers per destination and operation, so memory does not grow with the transfers.
+ * Not thread safe.
+ */
+class MirrorAnomalies
+{
+	final static double ALPHA = 0.2 ;          // weight of the newest transfer in the EWMA
+	final static int  WARMUP = 5 ;             // transfers before a baseline is trusted
+	final static long MIN_BYTES = 1L << 20 ;   // smaller transfers are too short to show their speed
+	final static int  MIN_SECONDS = 60 ;       // shorter transfers are not flagged for their duration
+	final static int  RESUME_JUMP = 2 ;        // resumes above the baseline that are flagged
+	final static int  FAILURE_STREAK = 3 ;     // failures in a row that are flagged (and each as many more)
+	final static String [] KINDS = { "slow", "long", "resumes", "failures" };
+
+	final double band ; // a transfer is flagged below band * the baseline speed, above the baseline duration / band
+	final MirrorSymbols destinations = new MirrorSymbols();
+	final MirrorSymbols operations   = new MirrorSymbols();
+	Baseline [][] baselines = new Baseline [64][]; // by destinations id, then by operations id
+	final long [] flagged = new long [KINDS.length];
+
+	/** Flags transfers the given percentage (1 to 99) or more below their baseline. */
+	MirrorAnomalies(int percent) {
+		if(percent < 1 || percent > 99) throw new IllegalArgumentException("Percentage should be 1 to 99: "+percent);
+		band = (100 - percent) / 100.0 ;
+	}
+
+	/** The numbers of one destination and operation type. */
+	static class Baseline
+	{
+		double speed = 0.0, duration = 0.0, resumes = 0.0 ; // EWMAs: bytes per second, seconds, resumes
+		int speeds = 0, durations = 0, transfers = 0 ;
+		int failures = 0 ; // in a row
+	}
+
+	static double ewma(double average, double value, int count) {
+		return (count == 0)?value:average + ALPHA * (value - average);
+	}
+
+	/** Checks an operation against its baseline, then takes it into the baseline. */
+	void add(MirrorSpeeds ms) {
+		if(!ms.hasEnded()) return ;
+		Baseline b = baseline(ms.getDestination(), ms.getOperation());
+
+		int resumes = ms.getResumeCount();
+		if(b.transfers >= WARMUP && resumes >= b.resumes + RESUME_JUMP)
+			flag(2, ms, resumes+" resumes, the baseline is "+Math.round(10.0 * b.resumes) / 10.0);
+		b.resumes = ewma(b.resumes, resumes, b.transfers);
+		b.transfers++ ;
+
+		if(!ms.wasSuccess()) {
+			if(++b.failures % FAILURE_STREAK == 0)
+				flag(3, ms, b.failures+" failures in a row: "+ms.getFailureMessage());
+			return ;
+		}
+		b.failures = 0 ;
+
+		long size = ms.getTransferBytes();
+		int  secs = ms.getTransferSeconds();
+		if(size >= MIN_BYTES && secs > 0) {
+			double speed = (double)size / secs ;
+			if(b.speeds >= WARMUP && speed < band * b.speed)
+				flag(0, ms, "speed "+MirrorSpeeds.transferSpeed(size, secs)+" is "+percentBelow(speed, b.speed)+"% below the baseline "+MirrorSpeeds.transferSpeed(Math.round(b.speed), 1));
+			b.speed = ewma(b.speed, speed, b.speeds++);
+		}
+		if(secs >= 0) {
+			if(b.durations >= WARMUP && secs >= MIN_SECONDS && secs > b.duration / band)
+				flag(1, ms, "took "+MirrorSpeeds.secondsToTime(secs)+", the baseline is "+MirrorSpeeds.secondsToTime((int)Math.round(b.duration)));
+			b.duration = ewma(b.duration, secs, b.durations++);
+	}	}
+
+	static long percentBelow(double value, double baseline) {
+		return Math.round(100.0 * (1.0 - value / baseline));
+	}
+
+	Baseline baseline(String dest, String operation) {
+		int d = destinations.id(dest);
+		int o = operations.id(operation);
+		if(d >= baselines.length) baselines = Arrays.copyOf(baselines, Math.max(2*baselines.length, d+1));
+		if(baselines[d] == null) baselines[d] = new Baseline [Math.max(8, o+1)];
+		if(o >= baselines[d].length) baselines[d] = Arrays.copyOf(baselines[d], Math.max(2*baselines[d].length, o+1));
+		if(baselines[d][o] == null) baselines[d][o] = new Baseline();
+		return baselines[d][o];
+	}
+
+	void flag(int kind, MirrorSpeeds ms, String why) {
+		flagged[kind]++ ;
+		MirrorSpeeds.warn("Anomaly ("+KINDS[kind]+"): "+ms.getDestination()+" "+ms.getOperation()+" started "+ms.getStartTime()+": "+why);
+	}
+
+	/** Logs how many transfers were flagged per kind. */
+	void print() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("Anomalies of "+destinations.size()+" destination(s):");
+		for(int k=0;k < KINDS.length;k++) {
+			buf.append(' ');
+			buf.append(KINDS[k]);
+			buf.append('=');
+			buf.append(flagged[k]);
+		}
+		MirrorSpeeds.log(new String(buf));
+	}
+}
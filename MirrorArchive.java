@@ -0,0 +1,303 @@
+import java.io.* ;
+import java.nio.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
+import java.util.zip.* ;
+
+/**
+ * Streams logs straight out of gzip files and tar archives (.gz, .tar, .tgz/.tar.gz AutoSupport bundles),
+ * without unpacking them to disk. A reader thread decompresses and picks the log members out of the archive,
+ * and hands over chunks of complete lines through a small queue, so decompression overlaps with parsing.
+ * Members are read in archive order; gzipped members inside a tar are decompressed as well.
+ */
+class MirrorArchive implements Runnable
+{
+	final static int SNAPMIRROR_LOG = 0 ; // members named like snapmirror_audit.log*
+	final static int AUDIT_MLOG     = 1 ; // members named like audit.log* (not SnapMirror)
+
+	final static int CHUNK_SIZE   = 1 << 20 ;
+	final static int QUEUE_CHUNKS = 4 ;
+	final static int TAR_BLOCK    = 512 ;
+	final static ByteBuffer END   = ByteBuffer.allocate(0);
+
+	/** True when the file is gzip compressed or a tar archive (by its first bytes, not its name). */
+	static boolean isArchive(File fl) {
+		byte [] head = new byte [TAR_BLOCK];
+		int len = 0 ;
+		InputStream in = null ;
+		try {
+			in = new FileInputStream(fl);
+			len = readFully(in, head, 0, head.length);
+			in.close();
+		} catch(IOException iox) {
+			if(in != null) try { in.close(); } catch(IOException closingException) { }
+			return false ;
+		}
+		return isGzip(head, len) || isTar(head, len);
+	}
+	static boolean isGzip(byte [] head, int len) {
+		return len >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b ;
+	}
+	static boolean isTar(byte [] head, int len) {
+		return len >= 262 && head[257] == 'u' && head[258] == 's' && head[259] == 't' && head[260] == 'a' && head[261] == 'r' ;
+	}
+	static boolean isMember(String name, int kind) {
+		String base = name.substring(name.lastIndexOf('/')+1).toLowerCase();
+		boolean snapmirror = base.indexOf("snapmirror") >= 0 ;
+		if(kind == SNAPMIRROR_LOG) return snapmirror && base.indexOf("audit") >= 0 ;
+		return !snapmirror && (base.indexOf("audit") >= 0 || base.indexOf("mlog") >= 0);
+	}
+
+	final File file ;
+	final int  kind ;
+	final BlockingQueue<ByteBuffer> chunks = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CHUNKS);
+	final Vector<String> members = new Vector<String>();
+	volatile IOException error = null ;
+	Thread reader = null ;
+
+	MirrorArchive(File fl, int kind) {
+		if(fl == null) throw new NullPointerException("Archive file required (null).");
+		this.file = fl ;
+		this.kind = kind ;
+	}
+
+	/** Starts the reader thread; take the chunks with nextChunk(). */
+	static MirrorArchive start(File fl, int kind) {
+		MirrorArchive archive = new MirrorArchive(fl, kind);
+		archive.reader = new Thread(archive, "MirrorArchive "+fl.getName());
+		archive.reader.setDaemon(true);
+		archive.reader.start();
+		return archive ;
+	}
+
+	/** Next chunk of complete lines, null at the end; throws what the reader thread ran into. */
+	ByteBuffer nextChunk() throws IOException {
+		ByteBuffer chunk = null ;
+		try {
+			chunk = chunks.take();
+		} catch(InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted reading "+file.toString());
+		}
+		if(chunk == END) {
+			chunks.offer(END); // stays at the end
+			if(error != null) throw error ;
+			return null ;
+		}
+		return chunk ;
+	}
+	void close() {
+		if(reader != null) reader.interrupt();
+	}
+
+	public void run() {
+		InputStream in = null ;
+		boolean closed = false ;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+			in.mark(TAR_BLOCK);
+			byte [] head = new byte [TAR_BLOCK];
+			int len = readFully(in, head, 0, head.length);
+			in.reset();
+			if(isGzip(head, len)) {
+				in = new BufferedInputStream(new GZIPInputStream(in, CHUNK_SIZE), CHUNK_SIZE);
+				in.mark(TAR_BLOCK);
+				len = readFully(in, head, 0, head.length);
+				in.reset();
+			}
+			if(isTar(head, len))
+				readTar(in);
+			else {
+				members.addElement(file.getName());
+				readLines(in);
+			}
+			in.close();
+		} catch(InterruptedException ix) {
+			closed = true ; // by the consumer
+		} catch(IOException iox) {
+			error = iox ;
+		} catch(RuntimeException rx) {
+			error = new IOException(rx.toString(), rx);
+		} finally {
+			if(in != null) try { in.close(); } catch(IOException closingException) { }
+			if(!closed)
+				try {
+					chunks.put(END);
+				} catch(InterruptedException ix) {
+					closed = true ;
+				}
+			if(closed) { // nobody takes the rest
+				chunks.clear();
+				chunks.offer(END);
+			}
+		}
+	}
+
+	/** Walks the tar headers, reading the matching members and skipping the rest. */
+	void readTar(InputStream in) throws IOException, InterruptedException {
+		byte [] header = new byte [TAR_BLOCK];
+		String longName = null ;
+		while(readFully(in, header, 0, TAR_BLOCK) == TAR_BLOCK && header[0] != 0) {
+			long size = octal(header, 124, 12);
+			char type = (char)header[156];
+			String name = longName ;
+			longName = null ;
+			if(name == null) {
+				name = text(header, 0, 100);
+				String prefix = text(header, 345, 155);
+				if(isTar(header, TAR_BLOCK) && prefix.length() > 0) name = prefix+"/"+name ;
+			}
+			InputStream member = new MemberStream(in, size);
+			if(type == 'L') // GNU long name of the next member
+				longName = text(readAll(member, size), 0, (int)size);
+			else
+			if((type == '0' || type == 0) && isMember(name, kind)) {
+				members.addElement(name);
+				readLines(name.toLowerCase().endsWith(".gz")?new GZIPInputStream(member, CHUNK_SIZE):member);
+			}
+			skip(member, Long.MAX_VALUE); // the rest of the member
+			skip(in, (TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK); // padding
+		}
+	}
+
+	/** Cuts the stream into chunks that end at a line end and queues them. */
+	void readLines(InputStream in) throws IOException, InterruptedException {
+		byte [] buf = new byte [CHUNK_SIZE];
+		int len = 0, read = 0 ;
+		while((read = in.read(buf, len, buf.length - len)) >= 0) {
+			len += read ;
+			if(len < buf.length) continue ;
+
+			int end = lastLineEnd(buf, len);
+			if(end < 0) { // one line longer than the chunk
+				buf = Arrays.copyOf(buf, 2*buf.length);
+				continue ;
+			}
+			chunks.put(ByteBuffer.wrap(Arrays.copyOf(buf, end)));
+			System.arraycopy(buf, end, buf, 0, len - end);
+			len -= end ;
+		}
+		if(len > 0) chunks.put(ByteBuffer.wrap(Arrays.copyOf(buf, len)));
+	}
+	static int lastLineEnd(byte [] buf, int len) {
+		for(int i=len-1;i >= 0;i--)
+			if(buf[i] == '\n') return i+1 ;
+		for(int i=len-1;i >= 0;i--)
+			if(buf[i] == '\r') return i+1 ;
+		return -1 ;
+	}
+
+	static int readFully(InputStream in, byte [] buf, int off, int len) throws IOException {
+		int total = 0, read = 0 ;
+		while(total < len && (read = in.read(buf, off+total, len-total)) >= 0) total += read ;
+		return total ;
+	}
+	static byte [] readAll(InputStream in, long size) throws IOException {
+		byte [] buf = new byte [(int)Math.min(size, 1 << 16)];
+		return Arrays.copyOf(buf, readFully(in, buf, 0, buf.length));
+	}
+	static void skip(InputStream in, long count) throws IOException {
+		byte [] buf = null ;
+		while(count > 0) {
+			long skipped = in.skip(count);
+			if(skipped <= 0) { // not all streams skip
+				if(buf == null) buf = new byte [TAR_BLOCK];
+				int read = in.read(buf, 0, (int)Math.min(count, buf.length));
+				if(read < 0) return ;
+				skipped = read ;
+			}
+			count -= skipped ;
+		}
+	}
+	static String text(byte [] buf, int off, int len) {
+		int end = off ;
+		while(end < off+len && end < buf.length && buf[end] != 0) end++ ;
+		try {
+			return new String(buf, off, end-off, "UTF-8");
+		} catch(UnsupportedEncodingException uee) {
+			return new String(buf, off, end-off);
+		}
+	}
+	static long octal(byte [] buf, int off, int len) throws IOException {
+		if((buf[off] & 0x80) != 0) { // GNU base-256 for large members
+			long value = buf[off] & 0x7f ;
+			for(int i=1;i < len;i++) value = (value << 8) | (buf[off+i] & 0xff);
+			return value ;
+		}
+		long value = 0L ;
+		for(int i=off;i < off+len;i++) {
+			byte b = buf[i];
+			if(b == 0 || b == ' ') { if(value > 0L) break ; else continue ; }
+			if(b < '0' || b > '7') throw new IOException("Not a tar header: size field is "+text(buf, off, len));
+			value = (value << 3) + (b - '0');
+		}
+		return value ;
+	}
+
+	/** The bytes of one tar member; close() is not passed on. */
+	static class MemberStream extends FilterInputStream
+	{
+		long remaining ;
+
+		MemberStream(InputStream in, long size) {
+			super(in);
+			remaining = size ;
+		}
+		public int read() throws IOException {
+			if(remaining <= 0) return -1 ;
+			int b = in.read();
+			if(b >= 0) remaining-- ;
+			return b ;
+		}
+		public int read(byte [] buf, int off, int len) throws IOException {
+			if(remaining <= 0) return -1 ;
+			int read = in.read(buf, off, (int)Math.min(len, remaining));
+			if(read > 0) remaining -= read ;
+			return read ;
+		}
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(Math.min(n, remaining));
+			if(skipped > 0) remaining -= skipped ;
+			return skipped ;
+		}
+		public int available() throws IOException {
+			return (int)Math.min(in.available(), remaining);
+		}
+		public boolean markSupported() {
+			return false ;
+		}
+		public void close() {
+		}
+	}
+
+	/** The chunks as one stream, for line readers (see MirrorSpeeds.infoFromAuditMLog). */
+	static class ChunkStream extends InputStream
+	{
+		final MirrorArchive archive ;
+		ByteBuffer chunk = null ;
+
+		ChunkStream(MirrorArchive archive) {
+			this.archive = archive ;
+		}
+		boolean fill() throws IOException {
+			while(chunk == null || !chunk.hasRemaining()) {
+				chunk = archive.nextChunk();
+				if(chunk == null) return false ;
+			}
+			return true ;
+		}
+		public int read() throws IOException {
+			return fill()?(chunk.get() & 0xff):-1 ;
+		}
+		public int read(byte [] buf, int off, int len) throws IOException {
+			if(len == 0) return 0 ;
+			if(!fill()) return -1 ;
+			len = Math.min(len, chunk.remaining());
+			chunk.get(buf, off, len);
+			return len ;
+		}
+		public void close() {
+			archive.close();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+import java.io.* ;
+import java.nio.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+
+/**
+ * Scans an audit-mlog for the snapmirror-update requests on the raw bytes, with the mapping and archive
+ * reading of MirrorLogScanner. Audit-mlogs log every API call, so lines are not framed one by one: the mapped
+ * region is searched for <snapmirror-update> (Boyer-Moore-Horspool, looking at about one byte in 19) and
+ * only the line around a hit is framed. That line is read in one forward sweep over the " :: " parts and
+ * the XML parameters, and Strings are only made for the request items (see MirrorSpeeds.REQUEST_ITEMS).
+ */
+class MirrorAuditScanner extends MirrorLogScanner
+{
+	final static byte [] SNAP_UPDATE_XML = ascii(MirrorSpeeds.SNAP_UPDATE_XML);
+	final static byte [] SNAP_UPDATE_END = ascii("</"+MirrorSpeeds.SNAP_UPDATE+">");
+	final static byte [] SEPARATOR = ascii(" :: ");
+	final static int PARTS = 5 ; // date, node, host, vserver:account, XML
+	final static int [] SKIP = new int [256]; // Horspool shift by the byte under the end of the pattern
+	static {
+		Arrays.fill(SKIP, SNAP_UPDATE_XML.length);
+		for(int i=0;i < SNAP_UPDATE_XML.length-1;i++) SKIP[SNAP_UPDATE_XML[i] & 0xff] = SNAP_UPDATE_XML.length-1-i ;
+	}
+
+	final static int DATETIME = 0, HOST = 1, VSERVER = 2, ACCOUNT = 3, TARGET = 5 ; // REQUEST_ITEMS indexes
+	final static byte [][] XML_PARMS = new byte [MirrorSpeeds.XML_PARMS.length][];
+	static {
+		for(int i=0;i < XML_PARMS.length;i++)
+			if(MirrorSpeeds.XML_PARMS[i] != null) XML_PARMS[i] = ascii(MirrorSpeeds.XML_PARMS[i]);
+	}
+	final static byte [][] WEEKDAYS = new byte [MirrorSpeeds.WEEKDAYS.length][];
+	static {
+		for(int i=0;i < WEEKDAYS.length;i++) WEEKDAYS[i] = ascii(MirrorSpeeds.WEEKDAYS[i]);
+	}
+
+	final int [] partStart = new int [PARTS], partEnd = new int [PARTS];
+	boolean parameters = false ; // the last request had its snapmirror-update parameters
+	byte [] text = new byte [256];
+
+	MirrorAuditScanner(File mlogFile) throws IOException {
+		super(mlogFile);
+	}
+	MirrorAuditScanner(MirrorArchive archive) {
+		super(archive);
+	}
+	MirrorAuditScanner(ByteBuffer buffer) {
+		super(buffer);
+	}
+
+	/** Scanner for an audit-mlog, or for the audit-mlogs in it when it is compressed or an archive. */
+	static MirrorAuditScanner open(File mlogFile) throws IOException {
+		if(MirrorArchive.isArchive(mlogFile))
+			return new MirrorAuditScanner(MirrorArchive.start(mlogFile, MirrorArchive.AUDIT_MLOG));
+		return new MirrorAuditScanner(mlogFile);
+	}
+
+	/**
+	 * Items of the next snapmirror-update request (by MirrorSpeeds.REQUEST_ITEMS index), null at the end of the
+	 * file. When the request has no parameters to read, parameters is false and only the date is set.
+	 */
+	String [] nextRequest() throws IOException {
+		while(true) {
+			if(region != null) {
+				ByteBuffer b = region ;
+				int limit = b.limit();
+				boolean lastRegion = regionPos + limit >= fileSize ;
+				int hit = find(b, pos, limit);
+				if(hit >= 0) {
+					int s = hit, e = hit ;
+					while(s > pos && b.get(s-1) != '\n' && b.get(s-1) != '\r') s-- ;
+					while(e < limit && b.get(e) != '\n' && b.get(e) != '\r') e++ ;
+					if(e < limit || lastRegion) {
+						pos = e ;
+						if(pos < limit) pos++ ;
+						if(pos < limit && b.get(pos-1) == '\r' && b.get(pos) == '\n') pos++ ;
+						String [] items = scanRequest(b, s, e);
+						if(items != null) return items ;
+						continue ;
+					}
+					pos = s ; // the line goes on in the next region
+				} else {
+					int last = limit ;
+					while(last > pos && b.get(last-1) != '\n' && b.get(last-1) != '\r') last-- ;
+					pos = last ; // a line of the next region may start here
+			}	}
+			if(!nextLine()) return null ; // maps (or takes a chunk) from pos on, and frames one line
+			String [] items = scanRequest(region, lineStart, lineEnd);
+			if(items != null) return items ;
+		}
+	}
+
+	/** Offset of the first <snapmirror-update> in [from, to), -1 when none. */
+	static int find(ByteBuffer b, int from, int to) {
+		byte [] p = SNAP_UPDATE_XML ;
+		int last = p.length-1 ;
+		for(int i=from;i+last < to;i+=SKIP[b.get(i+last) & 0xff]) {
+			int j = last ;
+			while(j >= 0 && b.get(i+j) == p[j]) j-- ;
+			if(j < 0) return i ;
+		}
+		return -1 ;
+	}
+
+	/** Items of a request on [s, e) of a buffer, null when it is none (or has no date). */
+	String [] scanRequest(ByteBuffer b, int s, int e) {
+		if(indexOf(b, s, e, SNAP_UPDATE_XML) <= s) return null ;
+
+		int parts = 0 ;
+		for(int p=s;parts < PARTS && p < e;) { // non-empty parts, trimmed
+			int sep = (parts < PARTS-1)?indexOf(b, p, e, SEPARATOR):-1 ;
+			int end = (sep < 0)?e:sep ;
+			int from = p, to = end ;
+			while(from < to && (b.get(from) & 0xff) <= ' ') from++ ;
+			while(to > from && (b.get(to-1) & 0xff) <= ' ') to-- ;
+			if(from < to) {
+				partStart[parts] = from ;
+				partEnd[parts++] = to ;
+			}
+			p = (sep < 0)?e:sep + SEPARATOR.length ;
+		}
+		if(parts < PARTS) return null ;
+
+		// date/time: from the weekday up to the '['
+		int dateFrom = -1, bracket = indexOf(b, partStart[0], partEnd[0], (byte)'[');
+		for(int i=partStart[0];dateFrom < 0 && i < bracket;i++)
+			for(int w=0;w < WEEKDAYS.length;w++)
+				if(startsWith(b, i, bracket, WEEKDAYS[w])) dateFrom = i ;
+		if(dateFrom < 0) return null ;
+		int dateTo = bracket ;
+		while(dateTo > dateFrom && (b.get(dateTo-1) & 0xff) <= ' ') dateTo-- ;
+
+		String [] items = new String [MirrorSpeeds.REQUEST_ITEMS.length];
+		items[DATETIME] = text(b, dateFrom, dateTo);
+		int colon = indexOf(b, partStart[2], partEnd[2], (byte)':');
+		items[HOST] = text(b, partStart[2], (colon > partStart[2])?colon:partEnd[2]); // IP:Port
+		colon = indexOf(b, partStart[3], partEnd[3], (byte)':');
+		if(colon > partStart[3]) {
+			items[VSERVER] = text(b, partStart[3], colon);
+			items[ACCOUNT] = text(b, colon+1, partEnd[3]);
+		}
+
+		// the first value of each parameter between <snapmirror-update> and its end tag
+		parameters = false ;
+		int x = indexOf(b, partStart[4], partEnd[4], SNAP_UPDATE_XML);
+		int xmlEnd = (x < 0)?-1:indexOf(b, x, partEnd[4], SNAP_UPDATE_END);
+		if(x < 0 || xmlEnd < 0 || x + SNAP_UPDATE_XML.length == xmlEnd) return items ;
+		parameters = true ;
+		for(int i=x+SNAP_UPDATE_XML.length;i < xmlEnd;i++) {
+			if(b.get(i) != '<') continue ;
+			int close = indexOf(b, i+1, xmlEnd, (byte)'>');
+			if(close < 0) break ;
+			for(int p=0;p < XML_PARMS.length;p++)
+				if(XML_PARMS[p] != null && items[p] == null && close - i - 1 == XML_PARMS[p].length && startsWith(b, i+1, close, XML_PARMS[p])) {
+					int value = close+1, valueEnd = indexOf(b, value, xmlEnd, (byte)'<');
+					if(valueEnd >= 0) items[p] = text(b, value, valueEnd);
+				}
+			i = close ;
+		}
+		return items ;
+	}
+
+	static boolean startsWith(ByteBuffer b, int from, int to, byte [] prefix) {
+		if(to - from < prefix.length) return false ;
+		for(int i=0;i < prefix.length;i++)
+			if(b.get(from+i) != prefix[i]) return false ;
+		return true ;
+	}
+
+	/** [from, to) as a String: ASCII as is, anything else as UTF-8. */
+	String text(ByteBuffer b, int from, int to) {
+		int len = to - from ;
+		if(len > text.length) text = new byte [Math.max(len, 2*text.length)];
+		boolean ascii = true ;
+		for(int i=0;i < len;i++) {
+			byte c = b.get(from+i);
+			text[i] = c ;
+			if(c < 0) ascii = false ;
+		}
+		return new String(text, 0, len, ascii?StandardCharsets.ISO_8859_1:StandardCharsets.UTF_8);
+	}
+}
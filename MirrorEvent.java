@@ -0,0 +1,42 @@
+/**
+ * One parsed SnapMirror audit-log line, as far as MirrorSpeeds uses it.
+ * Parsing (done by MirrorSpeeds.parseLine) has no side effects, so lines can be parsed
+ * on worker threads, while the events are applied in log order by MirrorSpeeds.applyEvent.
+ */
+class MirrorEvent
+{
+	String opCmd    = null ; // command name before the '['
+	String dateTime = null ; // date/time before the command
+	long   seconds  = -1L ;  // dateTime converted, or -1 when it did not convert (counted as a problem when applied)
+
+	String opId     = null ; // as text only on Start lines, or when it is no UUID
+	boolean uuid    = false ; // the id is a UUID, as idHigh and idLow (see MirrorOpTable)
+	long idHigh = 0L, idLow = 0L ;
+	String action   = null ;
+	String destPath = null ;
+	String status   = null ;
+	String transfer = null ; // bytes_transferred as logged, parsed when applied
+	String message  = null ;
+
+	boolean resumeRequired = false ; // Defer line that carries the timeout message
+
+	/** Takes the Operation-Uuid of the fields; the text is made only when the row needs it (or it is no UUID). */
+	void setId(MirrorFields fields) {
+		uuid = fields.uuid(MirrorFields.OP_ID);
+		if(uuid) {
+			idHigh = fields.high ;
+			idLow  = fields.low ;
+		}
+		if(!uuid || MirrorSpeeds.ACTION_START.equals(action)) opId = fields.get(MirrorFields.OP_ID);
+	}
+
+	/** True for the actions whose time is kept (Start and End). */
+	boolean keepsTime() {
+		return MirrorSpeeds.ACTION_START.equals(action) || MirrorSpeeds.ACTION_END.equals(action);
+	}
+	/** Converts dateTime ahead of applying, for the actions that keep it. */
+	void convertTime() {
+		if(keepsTime())
+			seconds = Math.max(-1L, MirrorSpeeds.secondsOf(dateTime)); // stays -1 when it does not convert: counted when applied
+	}
+}
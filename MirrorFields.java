@@ -0,0 +1,155 @@
+import java.nio.* ;
+import java.nio.charset.* ;
+
+/**
+ * Reusable extractor for the few payload fields MirrorSpeeds reads (Operation-Uuid, action, destination,
+ * status, message, bytes_transferred), instead of a Properties per line from propertyItems().
+ * Works on a String or on the bytes of a ByteBuffer; scan() only records where the values are, so no
+ * objects are made until a field is fetched with get(). Not thread safe: one per thread.
+ */
+class MirrorFields
+{
+	final static int OP_ID    = 0 ;
+	final static int ACTION   = 1 ;
+	final static int DEST     = 2 ;
+	final static int STATUS   = 3 ;
+	final static int MSG      = 4 ;
+	final static int XFR      = 5 ;
+	final static String [] FIELD_NAMES = {
+		MirrorSpeeds.MIRROR_OP_ID,  MirrorSpeeds.MIRROR_ACTION,
+		MirrorSpeeds.MIRROR_DEST,   MirrorSpeeds.MIRROR_STATUS,
+		MirrorSpeeds.MIRROR_MSG,    MirrorSpeeds.MIRROR_XFR
+	};
+	final static String OP_ID_KEY = MirrorSpeeds.MIRROR_OP_ID+"=" ; // no such key: no operation on the line
+
+	final int [] start = new int [FIELD_NAMES.length];
+	final int [] end   = new int [FIELD_NAMES.length];
+
+	String     chars = null ; // either the line ...
+	ByteBuffer bytes = null ; // ... or the buffer holding it
+	ByteBuffer copier = null ;
+	final Charset charset = Charset.defaultCharset(); // what FileReader decodes with
+	byte [] text = new byte [256]; // scratch for the Strings made from bytes
+	long high = 0L, low = 0L ; // the last UUID read by uuid()
+
+	/** Scans the payload in [from, to) of a line; false when it has no Operation-Uuid field. */
+	boolean scan(String line, int from, int to) {
+		chars = line ;
+		bytes = null ;
+		return scan(from, to);
+	}
+	/** Scans the payload in [from, to) of a buffer (absolute indexes); false when it has no Operation-Uuid field. */
+	boolean scan(ByteBuffer buf, int from, int to) {
+		if(buf != bytes) {
+			bytes  = buf ;
+			copier = buf.duplicate();
+		}
+		chars = null ;
+		return scan(from, to);
+	}
+
+	int at(int i) {
+		return (chars != null)?chars.charAt(i):(bytes.get(i) & 0xff);
+	}
+
+	/**
+	 * Walks the name=value pairs exactly like propertyItems() and records where the values of
+	 * FIELD_NAMES are (the last one wins, as with Properties).
+	 */
+	boolean scan(int p, int e) {
+		for(int f=0;f < FIELD_NAMES.length;f++) start[f] = end[f] = -1 ;
+		if(indexOf(OP_ID_KEY, p, e) < 0) return false ; // fast rejection
+
+		while(p < e && at(p) <= ' ') p++ ; // trim()
+		while(e > p && at(e-1) <= ' ') e-- ;
+		int idx = indexOf('=', p, e);
+		if(idx <= p) return false ;
+
+		while(idx > p && idx < e) {
+			int spIdx = indexOf(' ', idx+1, e);
+			int eqIdx = indexOf('=', idx+1, e);
+			if(eqIdx < 0 || spIdx < 0) { // last pair: the value is the rest
+				setField(p, idx, idx+1, e);
+				break ;
+			}
+			setField(p, idx, idx+1, spIdx);
+			int next = spIdx+1 ;
+			while(next < e && at(next) <= ' ') next++ ; // trim()
+			idx = next + (eqIdx - spIdx - 1);
+			p = next ;
+		}
+		return start[OP_ID] >= 0 && start[OP_ID] < end[OP_ID] ;
+	}
+
+	void setField(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		int len = nameEnd - nameStart ;
+		for(int f=FIELD_NAMES.length-1;f >= 0;f--) {
+			String name = FIELD_NAMES[f];
+			if(name.length() == len) {
+				int i = 0 ;
+				while(i < len && at(nameStart+i) == name.charAt(i)) i++ ;
+				if(i == len) {
+					start[f] = valueStart ;
+					end[f]   = valueEnd ;
+					return ;
+	}	}	}	}
+
+	/** Value of a field as String, null when the line did not have it. */
+	String get(int f) {
+		return (start[f] < 0)?null:text(start[f], end[f]);
+	}
+
+	/**
+	 * Reads a field as a UUID (8-4-4-4-12 hex digits) into high and low, without making a String;
+	 * false when the line did not have it or it is no UUID.
+	 */
+	boolean uuid(int f) {
+		int s = start[f];
+		if(s < 0 || end[f] - s != 36) return false ;
+		long h = 0L, l = 0L ;
+		int digits = 0 ;
+		for(int i=s;i < s+36;i++) {
+			int c = at(i);
+			if(i-s == 8 || i-s == 13 || i-s == 18 || i-s == 23) {
+				if(c != '-') return false ;
+				continue ;
+			}
+			int d = Character.digit(c, 16);
+			if(d < 0) return false ;
+			if(digits++ < 16)
+				h = (h << 4) | d ;
+			else
+				l = (l << 4) | d ;
+		}
+		high = h ;
+		low  = l ;
+		return true ;
+	}
+
+	String text(int from, int to) {
+		if(chars != null) return chars.substring(from, to);
+		int len = to - from ;
+		if(len > text.length) text = new byte [Math.max(len, 2*text.length)];
+		copier.position(from);
+		copier.get(text, 0, len);
+		return new String(text, 0, len, charset);
+	}
+
+	int indexOf(int ch, int from, int to) {
+		for(int i=from;i < to;i++)
+			if(at(i) == ch) return i ;
+		return -1 ;
+	}
+	int indexOf(String pattern, int from, int to) {
+		int len  = pattern.length();
+		int last = to - len ;
+		char first = pattern.charAt(0);
+		for(int i=from;i <= last;i++)
+			if(at(i) == first) {
+				int j = 1 ;
+				while(j < len && at(i+j) == pattern.charAt(j)) j++ ;
+				if(j == len) return i ;
+			}
+		return -1 ;
+	}
+}
@@ -0,0 +1,295 @@
+import java.nio.* ;
+import java.util.* ;
+
+/**
+ * The --since, --until, --dest, --op and --status filters. Time, destination and operation are decided at
+ * the Start of an operation, as early as possible: MirrorLogScanner checks the command and destination bytes
+ * of a Start line before any String is made, and then with --since/--until converts only its date text,
+ * before the other fields are read and the event is built. The Operation-Uuid of a filtered Start is
+ * remembered (as bytes) until its End, so the later lines of that operation are dropped without allocation.
+ * The status is only known at the End, so it is checked when the transfers are written.
+ */
+class MirrorFilter
+{
+	final static String [] STATUS_NAMES = { MirrorWriter.STATUS_SUCCESS, MirrorWriter.STATUS_FAILURE, MirrorWriter.STATUS_RUNNING };
+	final static byte [] START = MirrorLogScanner.ascii(MirrorSpeeds.ACTION_START);
+	final static byte [] END   = MirrorLogScanner.ascii(MirrorSpeeds.ACTION_END);
+
+	long since = Long.MIN_VALUE ; // start seconds (see MirrorSpeeds.convertToSeconds)
+	long until = Long.MAX_VALUE ;
+	byte [] destGlob = null ;     // * and ? wildcards
+	String [] operations = null ; // names, any case
+	byte [][] operationBytes = null ;
+	boolean [] statuses = null ;  // by STATUS_NAMES index
+
+	/**
+	 * Filtered operations per parsing thread. With --parallel a file is parsed in byte ranges on several
+	 * threads, so the later lines of an operation filtered in one range pass in a range parsed on another
+	 * thread (and its End does not remove it here until the pool ends); they are dropped when applied, as
+	 * MirrorSpeeds.applyEvent ignores the lines of operations that never started.
+	 */
+	final ThreadLocal<IdSet> skipped = new ThreadLocal<IdSet>() {
+		protected IdSet initialValue() {
+			return new IdSet();
+		}
+	};
+
+	/** Seconds of a --since/--until value: 24h, 30m, 7d or 90s back from now, yyyy-MM-dd[THH:mm[:ss]] (UTC), or a date as logged. */
+	static long parseTime(String value) {
+		if(value == null || value.length() == 0) throw new IllegalArgumentException("Time required (empty).");
+		if("smhd".indexOf(value.charAt(value.length()-1)) >= 0)
+			try {
+				return System.currentTimeMillis() / 1000L - MirrorWriter.EPOCH_2000 - parseDuration(value);
+			} catch(NumberFormatException nfx) { } // not a duration
+		String hash = MirrorSpeeds.hashNumbers(value);
+		if(hash.startsWith("####-##-##")) {
+			String time = "00:00:00" ;
+			if(hash.length() > 10) {
+				char sep = value.charAt(10);
+				if(sep != 'T' && sep != ' ') throw new IllegalArgumentException("Time should be yyyy-MM-dd[THH:mm[:ss]], not: "+value);
+				time = value.substring(11);
+				if(MirrorSpeeds.hashNumbers(time).equals("##:##")) time = time+":00" ;
+			}
+			int month = Integer.parseInt(value.substring(5,7));
+			if(month < 1 || month > 12) throw new IllegalArgumentException("No such month in: "+value);
+			return MirrorSpeeds.convertToSeconds(MirrorSpeeds.MONTH_NAMES[month-1]+" "+value.substring(8,10)+" "+time+" UTC "+value.substring(0,4));
+		}
+		return MirrorSpeeds.convertToSeconds(value);
+	}
+
+	/** Seconds of 90s, 30m, 12h or 7d. */
+	static long parseDuration(String value) {
+		int unit = "smhd".indexOf(value.charAt(value.length()-1));
+		if(unit < 0) throw new IllegalArgumentException("Duration should end with s, m, h or d: "+value);
+		long [] unitSecs = { 1L, MirrorSpeeds.MIN_SECONDS, MirrorSpeeds.HOUR_SECONDS, MirrorSpeeds.DAY_SECONDS };
+		return Long.parseLong(value.substring(0, value.length()-1)) * unitSecs[unit] ;
+	}
+
+	void setDestination(String glob) {
+		destGlob = MirrorLogScanner.ascii(glob);
+	}
+	void setOperations(String list) {
+		StringTokenizer names = new StringTokenizer(list, ",");
+		operations = new String [names.countTokens()];
+		operationBytes = new byte [operations.length][];
+		for(int i=0;i < operations.length;i++) {
+			operations[i] = names.nextToken().trim();
+			if(!MirrorSpeeds.knownOperation(operations[i]))
+				throw new IllegalArgumentException("Unknown operation: "+operations[i]);
+			operationBytes[i] = MirrorLogScanner.ascii(operations[i]);
+		}
+	}
+	void setStatuses(String list) {
+		statuses = new boolean [STATUS_NAMES.length];
+		StringTokenizer names = new StringTokenizer(list, ",");
+		while(names.hasMoreTokens()) {
+			String name = names.nextToken().trim();
+			int idx = STATUS_NAMES.length-1 ;
+			while(idx >= 0 && !STATUS_NAMES[idx].equalsIgnoreCase(name)) idx-- ;
+			if(idx < 0) throw new IllegalArgumentException("Unknown status: "+name+" (use success, failure or running)");
+			statuses[idx] = true ;
+	}	}
+
+	/** True when Start lines have to be checked (the status alone is checked at the end). */
+	boolean checksStarts() {
+		return since != Long.MIN_VALUE || until != Long.MAX_VALUE || destGlob != null || operations != null ;
+	}
+
+	/** True when the start time is checked (--since or --until). */
+	boolean checksTimes() {
+		return since != Long.MIN_VALUE || until != Long.MAX_VALUE ;
+	}
+	boolean acceptsStart(long startSecs) {
+		return startSecs < 0L || (startSecs >= since && startSecs <= until); // unconverted: reported when applied
+	}
+	boolean acceptsOperation(String opCmd) {
+		if(operations == null) return true ;
+		for(int i=0;i < operations.length;i++)
+			if(operations[i].equalsIgnoreCase(opCmd)) return true ;
+		return false ;
+	}
+	boolean acceptsOperation(ByteBuffer b, int from, int to) {
+		if(operations == null) return true ;
+		for(int i=0;i < operationBytes.length;i++) {
+			byte [] name = operationBytes[i];
+			if(name.length != to - from) continue ;
+			int j = 0 ;
+			while(j < name.length && lower(b.get(from+j)) == lower(name[j])) j++ ;
+			if(j == name.length) return true ;
+		}
+		return false ;
+	}
+	boolean acceptsDestination(String destPath) {
+		if(destGlob == null) return true ;
+		if(destPath == null) return false ;
+		return matches(ByteBuffer.wrap(MirrorLogScanner.ascii(destPath)), 0, destPath.length());
+	}
+	boolean acceptsDestination(ByteBuffer b, int from, int to) {
+		return destGlob == null || (from >= 0 && matches(b, from, to));
+	}
+	/** A whole started operation (the String check of what MirrorLogScanner checks on the bytes). */
+	boolean accepts(MirrorEvent ev) {
+		return acceptsOperation(ev.opCmd) && acceptsDestination(ev.destPath) && acceptsStart(ev.seconds);
+	}
+	boolean acceptsStatus(MirrorSpeeds ms) {
+		if(statuses == null) return true ;
+		if(!ms.hasEnded()) return statuses[2] ;
+		return ms.wasSuccess()?statuses[0]:statuses[1] ;
+	}
+
+	static int lower(int b) {
+		return (b >= 'A' && b <= 'Z')?b + ('a' - 'A'):b ;
+	}
+
+	/** Glob match of destGlob on [from, to) of a buffer, * for any run of bytes and ? for one. */
+	boolean matches(ByteBuffer b, int from, int to) {
+		byte [] glob = destGlob ;
+		int g = 0, i = from ;
+		int starG = -1, starI = -1 ;
+		while(i < to) {
+			if(g < glob.length && (glob[g] == '?' || glob[g] == b.get(i))) {
+				g++ ;
+				i++ ;
+			} else
+			if(g < glob.length && glob[g] == '*') {
+				starG = g++ ;
+				starI = i ;
+			} else
+			if(starG >= 0) { // let the last * take one more byte
+				g = starG+1 ;
+				i = ++starI ;
+			} else
+				return false ;
+		}
+		while(g < glob.length && glob[g] == '*') g++ ;
+		return g == glob.length ;
+	}
+
+	/** True when the action in [from, to) is Start. */
+	static boolean isStart(ByteBuffer b, int from, int to) {
+		return isAction(START, b, from, to);
+	}
+	/** True when the action in [from, to) is End. */
+	static boolean isEnd(ByteBuffer b, int from, int to) {
+		return isAction(END, b, from, to);
+	}
+	static boolean isAction(byte [] action, ByteBuffer b, int from, int to) {
+		if(to - from != action.length) return false ;
+		for(int i=0;i < action.length;i++)
+			if(b.get(from+i) != action[i]) return false ;
+		return true ;
+	}
+
+	/**
+	 * Operation ids as bytes in an open addressing hash set, so lookups make no objects. A removal shifts the
+	 * slots after it back (no tombstones, as in MirrorOpTable); the bytes of the removed ids are dropped once
+	 * they are more than those of the ids left.
+	 */
+	static class IdSet
+	{
+		int size = 0 ;  // ids in the set
+		int count = 0 ; // ids stored in offsets, removed ones included
+		int [] slots = new int [1024]; // 1 + index into offsets, 0 when free
+		int [] hashes = new int [1024];
+		int [] offsets = new int [512];
+		int [] lengths = new int [512];
+		byte [] bytes = new byte [512*36];
+		int used = 0 ;
+
+		static int hash(ByteBuffer b, int from, int to) {
+			int h = 1 ;
+			for(int i=from;i < to;i++) h = 31 * h + b.get(i);
+			return h ^ (h >>> 16);
+		}
+
+		boolean contains(ByteBuffer b, int from, int to) {
+			if(size == 0) return false ;
+			int h = hash(b, from, to);
+			int mask = slots.length-1 ;
+			for(int s=h & mask;slots[s] != 0;s=(s+1) & mask)
+				if(hashes[s] == h && same(slots[s]-1, b, from, to)) return true ;
+			return false ;
+		}
+		boolean same(int id, ByteBuffer b, int from, int to) {
+			if(lengths[id] != to - from) return false ;
+			int off = offsets[id];
+			for(int i=from;i < to;i++)
+				if(bytes[off++] != b.get(i)) return false ;
+			return true ;
+		}
+
+		void add(ByteBuffer b, int from, int to) {
+			if(contains(b, from, to)) return ;
+			if(2*(size+1) > slots.length) rehash(2*slots.length);
+			if(count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2*count);
+				lengths = Arrays.copyOf(lengths, 2*count);
+			}
+			int len = to - from ;
+			if(used + len > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, used+len));
+			offsets[count] = used ;
+			lengths[count] = len ;
+			for(int i=from;i < to;i++) bytes[used++] = b.get(i);
+
+			int h = hash(b, from, to);
+			int mask = slots.length-1 ;
+			int s = h & mask ;
+			while(slots[s] != 0) s = (s+1) & mask ;
+			slots[s]  = ++count ;
+			hashes[s] = h ;
+			size++ ;
+		}
+
+		void remove(ByteBuffer b, int from, int to) {
+			if(size == 0) return ;
+			int h = hash(b, from, to);
+			int mask = slots.length-1 ;
+			int s = h & mask ;
+			while(slots[s] != 0 && (hashes[s] != h || !same(slots[s]-1, b, from, to))) s = (s+1) & mask ;
+			if(slots[s] == 0) return ;
+			slots[s] = 0 ;
+			size-- ;
+			for(int n=(s+1) & mask;slots[n] != 0;n=(n+1) & mask) { // move back what probed past the hole
+				int home = hashes[n] & mask ;
+				if(((n - home) & mask) >= ((n - s) & mask)) {
+					slots[s]  = slots[n];
+					hashes[s] = hashes[n];
+					slots[n]  = 0 ;
+					s = n ;
+			}	}
+			if(count > 64 && count > 2*size) compact();
+		}
+
+		/** Moves the bytes of the ids left to the front, in the order they were added. */
+		void compact() {
+			int [] moved = new int [count]; // 1 + new index, 0 when removed
+			for(int s=0;s < slots.length;s++)
+				if(slots[s] != 0) moved[slots[s]-1] = 1 ;
+			int live = 0 ;
+			used = 0 ;
+			for(int id=0;id < count;id++)
+				if(moved[id] != 0) {
+					System.arraycopy(bytes, offsets[id], bytes, used, lengths[id]);
+					offsets[live] = used ;
+					lengths[live] = lengths[id];
+					used += lengths[id];
+					moved[id] = ++live ;
+				}
+			count = live ;
+			for(int s=0;s < slots.length;s++)
+				if(slots[s] != 0) slots[s] = moved[slots[s]-1];
+		}
+		void rehash(int capacity) {
+			int [] oldSlots = slots, oldHashes = hashes ;
+			slots  = new int [capacity];
+			hashes = new int [capacity];
+			int mask = capacity-1 ;
+			for(int o=0;o < oldSlots.length;o++)
+				if(oldSlots[o] != 0) {
+					int s = oldHashes[o] & mask ;
+					while(slots[s] != 0) s = (s+1) & mask ;
+					slots[s]  = oldSlots[o];
+					hashes[s] = oldHashes[o];
+		}		}
+	}
+}
@@ -0,0 +1,204 @@
+import java.io.* ;
+import java.nio.* ;
+import java.nio.channels.* ;
+import java.nio.file.* ;
+import java.nio.file.attribute.* ;
+import java.util.* ;
+
+/**
+ * Follow mode (--follow): reads the given log files and then keeps reading the last one as it grows, like
+ * tail -F does (unless it is compressed or an archive). Each operation is printed as soon as its End
+ * arrives and is then dropped from the store, so memory stays bounded by the transfers still in flight
+ * (except with --timeline, see MirrorTimeline). When the followed log is rotated (replaced by a new file)
+ * or truncated, the new content is read from the start. Anomalies (--anomalies) and RPO gaps (--rpo) are
+ * flagged as the transfers end. With --summary (and --timeline) the statistics of the ended transfers are
+ * printed when stopped, as are the counts of the lines that could not be used (see MirrorProblems). With
+ * --metrics the Starts and Ends are counted into MirrorMetrics as they are applied.
+ */
+class MirrorFollower
+{
+	final static int  READ_SIZE   = 1 << 20 ;
+	final static long POLL_MILLIS = 1000L ;
+
+	final MirrorStore store = new MirrorStore();
+	final boolean skipFailures ;
+	final MirrorRequests infoIndex ;
+	final MirrorStats stats ;
+	final MirrorTimeline timeline ;
+	final MirrorMetrics metrics ;
+	final MirrorWriter writer ; // each transfer is written and flushed as it ends
+	File followed = null ;
+	long busy = 0L ; // --stats: nanoseconds in apply(), which is not scanning
+
+	MirrorFollower(boolean skipFailures, MirrorRequests infoIndex, final MirrorStats stats, final MirrorTimeline timeline, MirrorMetrics metrics, MirrorWriter writer) {
+		this.skipFailures = skipFailures ;
+		this.infoIndex    = infoIndex ;
+		this.stats        = stats ;
+		this.timeline     = timeline ;
+		this.metrics      = metrics ;
+		this.writer       = writer ;
+		store.byDestination = false ; // nothing is kept for a report at the end
+		Runtime.getRuntime().addShutdownHook(new Thread("MirrorFollower statistics") {
+			public void run() {
+				if(stats != null)
+					synchronized(stats) { stats.print(); }
+				if(timeline != null)
+					synchronized(timeline) { timeline.print(); }
+				if(MirrorSpeeds.anomalies != null)
+					synchronized(MirrorSpeeds.anomalies) { MirrorSpeeds.anomalies.print(); }
+				if(MirrorSpeeds.rpo != null)
+					synchronized(MirrorSpeeds.rpo) { MirrorSpeeds.rpo.print(); }
+				MirrorSpeeds.problems.print();
+				if(MirrorSpeeds.runStats != null) MirrorSpeeds.runStats.print(store.rows);
+		}	});
+	}
+
+	/** Reads all files, then follows the last one until the program is stopped. */
+	void run(Vector<File> logFiles) {
+		for(int lf=0;lf < logFiles.size()-1;lf++)
+			read(logFiles.elementAt(lf));
+		if(logFiles.size() > 0 && MirrorArchive.isArchive(logFiles.lastElement()))
+			read(logFiles.lastElement()); // nothing to follow in there
+		else
+		if(logFiles.size() > 0)
+			try {
+				follow(logFiles.lastElement());
+			} catch(InterruptedException ix) {
+				Thread.currentThread().interrupt();
+			}
+	}
+
+	void apply(MirrorEvent ev) {
+		MirrorRunStats runStats = MirrorSpeeds.runStats ;
+		long begin = (runStats == null)?0L:System.nanoTime();
+		boolean start = metrics != null && MirrorSpeeds.ACTION_START.equals(ev.action) && store.rowOf(ev) < 0 ;
+		MirrorSpeeds ended = MirrorSpeeds.applyEvent(ev, store);
+		if(runStats != null) runStats.add(MirrorRunStats.APPLY, System.nanoTime() - begin, 1L);
+		if(start && store.rowOf(ev) >= 0) metrics.started(store.view(store.rowOf(ev)));
+		if(ended != null && MirrorSpeeds.filter != null && !MirrorSpeeds.filter.acceptsStatus(ended)) {
+			if(metrics != null) metrics.ended(ended, false);
+			store.release(ended.row);
+		} else
+		if(ended != null) {
+			if(metrics != null) metrics.ended(ended, true);
+			if(stats != null) synchronized(stats) { stats.add(ended); }
+			if(timeline != null) synchronized(timeline) { timeline.add(ended); }
+			if(MirrorSpeeds.anomalies != null) synchronized(MirrorSpeeds.anomalies) { MirrorSpeeds.anomalies.add(ended); }
+			if(MirrorSpeeds.rpo != null) synchronized(MirrorSpeeds.rpo) { MirrorSpeeds.rpo.add(ended); }
+			if(!skipFailures || ended.wasSuccess())
+				try {
+					MirrorSpeeds.write(ended, writer, infoIndex);
+					writer.flush();
+				} catch(IOException iox) {
+					MirrorSpeeds.err("I/O Error writing output: "+iox.toString(), 1);
+				}
+			store.release(ended.row);
+		}
+		if(runStats != null) busy += System.nanoTime() - begin ;
+	}
+
+	void read(File logFile) {
+		MirrorLogScanner scanner = null ;
+		try {
+			long begin = System.nanoTime() - busy ;
+			scanner = MirrorLogScanner.open(logFile);
+			MirrorEvent ev = null ;
+			while((ev = scanner.next()) != null)
+				apply(ev);
+			scanner.close();
+			if(MirrorSpeeds.runStats != null) MirrorSpeeds.runStats.scanned(logFile, scanner, System.nanoTime() - busy - begin);
+			MirrorSpeeds.log("Operations in flight: "+store.operationCount()+" after loading "+logFile.toString());
+		} catch(IOException iox) {
+			MirrorSpeeds.err("I/O Error "+iox.toString()+" reading:\nFILE:\t"+logFile.getAbsolutePath());
+			if(scanner != null) try { scanner.close(); } catch(IOException closingException) { }
+		}
+	}
+
+	void follow(File logFile) throws InterruptedException {
+		Path path = logFile.toPath();
+		FileChannel channel = null ;
+		Object fileKey = null ;
+		long pos = 0L ;
+		ByteBuffer buf = ByteBuffer.allocate(READ_SIZE);
+
+		followed = logFile ;
+		MirrorSpeeds.log("Following "+logFile.toString()+" (stop with Ctrl-C)");
+		while(true) {
+			try {
+				if(channel == null) {
+					channel = FileChannel.open(path, StandardOpenOption.READ);
+					fileKey = fileKey(path);
+					pos = 0L ;
+					buf.clear();
+				}
+				if(!buf.hasRemaining()) { // one line longer than the buffer
+					ByteBuffer bigger = ByteBuffer.allocate(2*buf.capacity());
+					buf.flip();
+					bigger.put(buf);
+					buf = bigger ;
+				}
+				int read = channel.read(buf, pos);
+				if(read > 0) {
+					pos += read ;
+					scanLines(buf, false);
+					continue ;
+				}
+				if(channel.size() < pos) {
+					MirrorSpeeds.warn("Log file was truncated, reading it from the start: "+logFile.toString());
+					scanLines(buf, true);
+					pos = 0L ;
+					continue ;
+				}
+				Object currentKey = fileKey(path);
+				if(currentKey != null && !currentKey.equals(fileKey)) {
+					MirrorSpeeds.log("Log file was rotated, following the new "+logFile.toString());
+					scanLines(buf, true); // the old file has been read to its end
+					channel.close();
+					channel = null ;
+					continue ;
+				}
+			} catch(NoSuchFileException nsf) { // in the middle of a rotation
+				if(channel != null) {
+					try {
+						scanLines(buf, true); // the old file has been read to its end
+					} catch(IOException iox) {
+						MirrorSpeeds.err("I/O Error "+iox.toString()+" following:\nFILE:\t"+logFile.getAbsolutePath());
+					}
+					try { channel.close(); } catch(IOException closingException) { }
+				}
+				channel = null ;
+			} catch(IOException iox) {
+				MirrorSpeeds.err("I/O Error "+iox.toString()+" following:\nFILE:\t"+logFile.getAbsolutePath());
+				if(channel != null) try { channel.close(); } catch(IOException closingException) { }
+				channel = null ;
+			}
+			Thread.sleep(POLL_MILLIS);
+		}
+	}
+
+	static Object fileKey(Path path) throws IOException {
+		return Files.readAttributes(path, BasicFileAttributes.class).fileKey(); // null where the file system has none
+	}
+
+	/** Applies the complete lines in buf (all of it when atEnd) and keeps the rest for the next read. */
+	void scanLines(ByteBuffer buf, boolean atEnd) throws IOException {
+		int end = buf.position();
+		if(!atEnd)
+			while(end > 0 && buf.get(end-1) != '\n' && buf.get(end-1) != '\r') end-- ;
+		if(end > 0) {
+			ByteBuffer lines = buf.duplicate();
+			lines.position(0);
+			lines.limit(end);
+			long begin = System.nanoTime() - busy ;
+			MirrorLogScanner scanner = new MirrorLogScanner(lines);
+			MirrorEvent ev = null ;
+			while((ev = scanner.next()) != null)
+				apply(ev);
+			if(MirrorSpeeds.runStats != null) MirrorSpeeds.runStats.scanned(followed, scanner, System.nanoTime() - busy - begin);
+
+			buf.flip();
+			buf.position(end);
+			buf.compact();
+		}
+	}
+}
@@ -0,0 +1,317 @@
+import java.io.* ;
+import java.util.* ;
+
+/**
+ * Writes synthetic SnapMirror audit logs (and optionally a matching audit-mlog) in the format MirrorSpeeds
+ * reads, for throughput and memory tests at any size without customer logs. Transfers start evenly spread
+ * over the time span, run for a random time so that on average the given number is in flight, and end in
+ * Success or Failure; some are deferred (resumed) or get an Info line. Lines are written in time order as
+ * they are generated, so memory only holds the lines of the transfers in flight.
+ * Usage: java MirrorGen [<options>] <output directory>
+ */
+class MirrorGen
+{
+	final static String USAGE = "Usage: java MirrorGen [<options>] <output directory>" ;
+	final static String [] OPTIONS = {
+		"n",  "lines",        "about the number of SnapMirror log lines to write (default 10000)",
+		"ds", "destinations", "number of destination volumes (default 50)",
+		"c",  "concurrency",  "transfers in flight on average (default 8)",
+		"fr", "failure-rate", "share of the transfers that fail (default 0.05)",
+		"rr", "resume-rate",  "share of the transfers deferred by a timeout, once or more (default 0.1)",
+		"ir", "info-rate",    "share of the transfers with an Info line (default 0.1)",
+		"br", "bad-rate",     "share of extra bad lines: unknown operations, garbled dates, no payload (default 0)",
+		"s",  "start",        "time of the first transfer: yyyy-MM-dd[THH:mm[:ss]] (UTC), 7d (back from now) or a logged date (default 2020-10-31T19:00)",
+		"sp", "span",         "time the transfers are spread over: 90s, 30m, 12h or 60d (default 7d)",
+		"z",  "zone",         "time zone name written in the dates (default CET)",
+		"r",  "rotate",       "lines per log file, 0 for one file (default 0)",
+		"ml", "mlog",         "also write audit.log, an audit-mlog with a snapmirror-update request per update",
+		"sk", "mlog-skew",    "seconds a request is logged before the Start of its transfer, up to (default 2)",
+		"sd", "seed",         "random seed (default 1)",
+		"h",  "help",         "shows this output"
+	};
+
+	final static String [] OPERATIONS = MirrorSpeeds.KNOWN_OPERATIONS ;
+	final static int [] OPERATION_SHARES = { 15, 70, 10, 4, 1 }; // percent, in the order of OPERATIONS
+	final static String [] UNKNOWN_OPERATIONS = { "ResyncUpdate", "BreakMirror", "RestoreTransfer" };
+	final static String LOG_NAME  = "snapmirror_audit.log" ;
+	final static String MLOG_NAME = "audit.log" ;
+	final static int SVMS = 4 ;
+
+	long lines = 10000L ;
+	int destinations = 50 ;
+	int concurrency = 8 ;
+	double failureRate = 0.05, resumeRate = 0.1, infoRate = 0.1, badRate = 0.0 ;
+	long start = -1L ;     // seconds (see MirrorSpeeds.convertToSeconds)
+	long span = 7L * MirrorSpeeds.DAY_SECONDS ;
+	String zone = "CET" ;
+	int zoneSecs = 0 ;
+	long rotate = 0L ;
+	boolean mlog = false ;
+	int mlogSkew = 2 ;
+	long seed = 1L ;
+
+	Random random ;
+	File dir ;
+	Writer out = null, mlogOut = null ;
+	int files = 0 ;
+	long written = 0L, fileLines = 0L, operations = 0L, requests = 0L ;
+	long seq = 0L ;
+	final PriorityQueue<Pending> pending = new PriorityQueue<Pending>();
+	final StringBuilder line = new StringBuilder(256);
+	char [] chars = new char [256];
+
+	/** A line of a transfer in flight, written when the time has come. */
+	static class Pending implements Comparable<Pending>
+	{
+		final long time, seq ;
+		final String text ;
+		Pending(long time, long seq, String text) {
+			this.time = time ;
+			this.seq  = seq ;
+			this.text = text ;
+		}
+		public int compareTo(Pending p) {
+			if(time != p.time) return (time < p.time)?-1:1 ;
+			return (seq < p.seq)?-1:((seq == p.seq)?0:1);
+		}
+	}
+
+	public static void main(String [] args) {
+		MirrorGen gen = new MirrorGen();
+		String dirName = null ;
+		try {
+			for(int i=0;i < args.length;i++) {
+				String option = MirrorSpeeds.getOption(args[i]);
+				if(option == null) {
+					dirName = args[i];
+					continue ;
+				}
+				int optIdx = -1 ;
+				for(int o=0;optIdx < 0 && o < OPTIONS.length;o+=3)
+					if(OPTIONS[o].equals(option) || OPTIONS[o+1].equals(option)) optIdx = o / 3 ;
+				if(optIdx == 11) {
+					gen.mlog = true ;
+					continue ;
+				}
+				if(optIdx < 0 || optIdx == 14 || i+1 >= args.length) {
+					printUsage();
+					if(optIdx == 14) System.exit(0);
+					MirrorSpeeds.err((optIdx < 0)?"Unknown option: "+args[i]:"Value missing for option: "+args[i], 5);
+				}
+				String value = args[++i];
+				switch(optIdx) {
+					case 0:  gen.lines = Long.parseLong(value); break ;
+					case 1:  gen.destinations = Integer.parseInt(value); break ;
+					case 2:  gen.concurrency = Integer.parseInt(value); break ;
+					case 3:  gen.failureRate = Double.parseDouble(value); break ;
+					case 4:  gen.resumeRate = Double.parseDouble(value); break ;
+					case 5:  gen.infoRate = Double.parseDouble(value); break ;
+					case 6:  gen.badRate = Double.parseDouble(value); break ;
+					case 7:  gen.start = MirrorFilter.parseTime(value); break ;
+					case 8:  gen.span = MirrorFilter.parseDuration(value); break ;
+					case 9:  gen.zone = value ; break ;
+					case 10: gen.rotate = Long.parseLong(value); break ;
+					case 12: gen.mlogSkew = Integer.parseInt(value); break ;
+					case 13: gen.seed = Long.parseLong(value); break ;
+				}
+			}
+		} catch(IllegalArgumentException iax) { // NumberFormatException as well
+			MirrorSpeeds.err("Unusable option value: "+iax.getMessage(), 5);
+		}
+		if(dirName == null) {
+			printUsage();
+			MirrorSpeeds.err("Output directory required.", 5);
+		}
+		if(gen.destinations < 1 || gen.concurrency < 1 || gen.span < 1L || gen.lines < 1L || gen.rotate < 0L || gen.mlogSkew < 0)
+			MirrorSpeeds.err("Lines, destinations, concurrency and span must be positive, rotate and mlog-skew not negative.", 5);
+		gen.zoneSecs = MirrorSpeeds.zoneSeconds(gen.zone);
+		if(gen.zoneSecs == MirrorSpeeds.NO_ZONE || gen.zone.startsWith("+") || gen.zone.startsWith("-"))
+			MirrorSpeeds.err("Unknown time zone name: "+gen.zone, 5);
+		if(gen.start < 0L) gen.start = MirrorFilter.parseTime("2020-10-31T19:00");
+
+		gen.dir = new File(dirName);
+		if(!gen.dir.isDirectory() && !gen.dir.mkdirs())
+			MirrorSpeeds.err("Cannot create the output directory:\nDIR:\t"+gen.dir.getAbsolutePath(), 5);
+		try {
+			gen.run();
+			MirrorSpeeds.log("Wrote "+gen.written+" lines of "+gen.operations+" transfers into "+gen.files+" log file(s)"+
+				(gen.mlog?" and "+gen.requests+" requests into "+MLOG_NAME:"")+" in "+gen.dir.getPath());
+		} catch(IOException iox) {
+			MirrorSpeeds.err("I/O Error writing into "+gen.dir.getAbsolutePath()+": "+iox.toString(), 1);
+		}
+	}
+	static void printUsage() {
+		MirrorSpeeds.log(USAGE);
+		MirrorSpeeds.log("OPTIONS:");
+		for(int i=0;i < OPTIONS.length;i+=3)
+			MirrorSpeeds.log("\t-"+OPTIONS[i]+"|--"+OPTIONS[i+1]+"\t"+OPTIONS[i+2]);
+	}
+
+	void run() throws IOException {
+		random = new Random(seed);
+		if(mlog) mlogOut = new BufferedWriter(new FileWriter(new File(dir, MLOG_NAME)), 1 << 20);
+
+		double linesPerTransfer = 2.0 + 1.5 * resumeRate + infoRate + badRate ;
+		double interval = span / Math.max(1.0, lines / linesPerTransfer); // between starts
+		double meanDuration = Math.max(1.0, concurrency * interval);      // so concurrency are in flight
+
+		for(long n=0;written + pending.size() < lines;n++) {
+			long time = start + (long)(n * interval + random.nextDouble() * interval);
+			flushUntil(time);
+			transfer(time, meanDuration);
+			if(badRate > 0.0 && random.nextDouble() < badRate) bad(time);
+		}
+		flushUntil(Long.MAX_VALUE);
+		if(out != null) out.close();
+		if(mlogOut != null) mlogOut.close();
+	}
+
+	void transfer(long time, double meanDuration) throws IOException {
+		int share = random.nextInt(100), op = 0 ;
+		while(share >= OPERATION_SHARES[op]) share -= OPERATION_SHARES[op++];
+		String operation = OPERATIONS[op];
+		int volume = random.nextInt(destinations);
+		String svm  = "svm"+(volume % SVMS)+"_dr" ;
+		String dest = svm+":vol"+volume ;
+		String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+		long duration = 1L + (long)(-Math.log(1.0 - random.nextDouble()) * meanDuration);
+		operations++ ;
+
+		if(mlogOut != null && (op == 0 || op == 1)) request(time - random.nextInt(mlogSkew+1), svm, volume, dest, uuid);
+
+		write(time, line(time, operation, uuid).append("action=Start source=src:vol").append(volume).append(" destination=").append(dest));
+		if(random.nextDouble() < resumeRate) {
+			long defer = time ;
+			do {
+				defer += 1L + random.nextInt((int)Math.min(Integer.MAX_VALUE, Math.max(1L, duration/2)));
+				if(defer >= time + duration) break ;
+				later(defer, line(defer, operation, uuid).append("action=Defer source=src:vol").append(volume).append(" destination=").append(dest)
+					.append(" message=").append(MirrorSpeeds.RESUME_REQUIRED));
+			} while(random.nextInt(2) == 0);
+		}
+		if(random.nextDouble() < infoRate) {
+			long info = time + Math.min(duration-1, 1L + random.nextInt(10));
+			later(info, line(info, operation, uuid).append("action=Info Transfer is waiting for resources"));
+		}
+		long end = time + duration ;
+		StringBuilder endLine = line(end, operation, uuid).append("action=End source=src:vol").append(volume).append(" destination=").append(dest);
+		if(random.nextDouble() < failureRate)
+			endLine.append(" status=Failure message=Transfer failed: the source volume is offline.");
+		else {
+			long speed = 100000L + (long)(random.nextDouble() * random.nextDouble() * 200000000.0); // bytes per second, mostly slow
+			endLine.append(" status=Success bytes_transferred=").append(speed * duration)
+				.append(" network_compression_ratio=1.0:1 transfer_desc=Logical Transfer");
+		}
+		later(end, endLine);
+	}
+
+	/** A line MirrorSpeeds has to skip or report: unknown operation, garbled date or no payload. */
+	void bad(long time) throws IOException {
+		String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+		switch(random.nextInt(3)) {
+			case 0:
+				String operation = UNKNOWN_OPERATIONS[random.nextInt(UNKNOWN_OPERATIONS.length)];
+				write(time, line(time, operation, uuid).append("action=Start source=src:vol0 destination=svm0_dr:vol0"));
+				later(time + 60L, line(time + 60L, operation, uuid).append("action=End source=src:vol0 destination=svm0_dr:vol0 status=Success bytes_transferred=4096"));
+				break ;
+			case 1:
+				StringBuilder garbled = line(time, OPERATIONS[1], uuid).append("action=Start source=src:vol0 destination=svm0_dr:vol0");
+				garbled.setCharAt(4, 'X'); // no month
+				garbled.setCharAt(11, '9'); // no HH:mm:ss
+				write(time, garbled);
+				break ;
+			default:
+				line.setLength(0);
+				write(time, line.append("garbage line without anything"));
+	}	}
+
+	/** Date and command of a log line, up to the payload. */
+	StringBuilder line(long time, String operation, String uuid) {
+		StringBuilder buf = new StringBuilder(256);
+		appendDate(buf, time, true);
+		buf.append(' ').append(operation).append('[');
+		appendDate(buf, time, false);
+		buf.append("]:").append(uuid, 0, 8).append(" Operation-Uuid=").append(uuid).append(" Group=none Operation-Cookie=0 ");
+		return buf ;
+	}
+
+	void request(long time, String svm, int volume, String dest, String uuid) throws IOException {
+		StringBuilder buf = new StringBuilder(384);
+		buf.append("00000005.").append(Long.toHexString(0x10000000L + requests)).append(" 0a3b6c2e ");
+		appendDate(buf, time, true);
+		buf.append(" [kern_audit:info:2113] 8503e80000123456 :: cl01:ontapi :: 10.1.")
+			.append(volume % 256).append('.').append(1 + random.nextInt(250)).append(':').append(1024 + random.nextInt(60000))
+			.append(" :: ").append(svm).append(":admin :: <netapp version='1.0'><snapmirror-update><source-location>src:vol").append(volume)
+			.append("</source-location><destination-location>").append(dest).append("</destination-location><source-snapshot>snapmirror.")
+			.append(uuid, 0, 8).append('_').append(time).append("</source-snapshot></snapmirror-update></netapp> :: Pending\n");
+		mlogOut.write(buf.toString());
+		requests++ ;
+	}
+
+	/** Logged date: "Sat Oct 31 20:00:28 CET 2020" (full) or "Oct 31 20:00:28" (in the command). */
+	void appendDate(StringBuilder buf, long time, boolean full) {
+		long local = time + zoneSecs ;
+		long days = Math.floorDiv(local, (long)MirrorSpeeds.DAY_SECONDS);
+		int clock = (int)(local - days * MirrorSpeeds.DAY_SECONDS);
+
+		// civil date of days since 2000-01-01 (see H. Hinnant, chrono-compatible low-level date algorithms)
+		long z = days + 10957L + 719468L ;
+		long era = Math.floorDiv(z, 146097L);
+		long doe = z - era * 146097L ;
+		long yoe = (doe - doe/1460 + doe/36524 - doe/146096) / 365 ;
+		long doy = doe - (365*yoe + yoe/4 - yoe/100);
+		long mp  = (5*doy + 2) / 153 ;
+		int day   = (int)(doy - (153*mp + 2)/5 + 1);
+		int month = (int)((mp < 10)?mp + 3:mp - 9);
+		long year = yoe + era * 400 + ((month <= 2)?1:0);
+
+		if(full) buf.append(MirrorSpeeds.WEEKDAYS[(int)Math.floorMod(days + 6L, 7L)]).append(' '); // 2000-01-01 was a Saturday
+		buf.append(MirrorSpeeds.MONTH_NAMES[month-1]).append(' ');
+		appendTwo(buf, day);
+		buf.append(' ');
+		appendTwo(buf, clock / 3600);
+		buf.append(':');
+		appendTwo(buf, (clock / 60) % 60);
+		buf.append(':');
+		appendTwo(buf, clock % 60);
+		if(full) buf.append(' ').append(zone).append(' ').append(year);
+	}
+
+	static void appendTwo(StringBuilder buf, int value) {
+		if(value < 10) buf.append('0');
+		buf.append(value);
+	}
+
+	void later(long time, StringBuilder buf) {
+		pending.add(new Pending(time, seq++, buf.toString()));
+	}
+	void flushUntil(long time) throws IOException {
+		while(!pending.isEmpty() && pending.peek().time <= time)
+			writeLine(pending.poll().text);
+	}
+	void write(long time, StringBuilder buf) throws IOException {
+		int len = buf.length();
+		if(len > chars.length) chars = new char [Math.max(len, 2*chars.length)];
+		buf.getChars(0, len, chars, 0);
+		nextLine();
+		out.write(chars, 0, len);
+		out.write('\n');
+	}
+	void writeLine(String text) throws IOException {
+		nextLine();
+		out.write(text);
+		out.write('\n');
+	}
+	/** Opens the (next) log file when needed and counts the line. */
+	void nextLine() throws IOException {
+		if(out == null || (rotate > 0L && fileLines >= rotate)) {
+			if(out != null) out.close();
+			files++ ;
+			String name = (rotate > 0L)?LOG_NAME+"."+String.format("%010d", files):LOG_NAME ;
+			out = new BufferedWriter(new FileWriter(new File(dir, name)), 1 << 20);
+			fileLines = 0L ;
+		}
+		fileLines++ ;
+		written++ ;
+	}
+}
@@ -0,0 +1,79 @@
+import java.io.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
+
+/**
+ * Scans one SnapMirror audit-log file, or one byte range of it, into its events (see MirrorLogScanner), to
+ * be run on a worker thread. An I/O error ends the file: the events read up to then are kept, together with
+ * the error.
+ */
+class MirrorLogFile implements Callable<MirrorLogFile>
+{
+	final static long MIN_RANGE = 1L << 20 ;  // bytes: a smaller file is not split
+	final static long MAX_RANGE = 16L << 20 ; // bytes: bounds the events parsed ahead per range
+
+	final File file ;
+	final long from, to ; // the byte range, to is -1 for the whole file
+	final boolean last ;  // the last range of the file
+	Vector<MirrorEvent> events = new Vector<MirrorEvent>();
+	IOException error = null ;
+
+	MirrorLogFile(File logFile) {
+		if(logFile == null) throw new NullPointerException("Log file required (null).");
+		this.file = logFile ;
+		this.from = 0L ;
+		this.to   = -1L ;
+		this.last = true ;
+	}
+	MirrorLogFile(File logFile, long from, long to, boolean last) {
+		if(logFile == null) throw new NullPointerException("Log file required (null).");
+		this.file = logFile ;
+		this.from = from ;
+		this.to   = to ;
+		this.last = last ;
+	}
+
+	/**
+	 * A log file as ranges of about rangeSize bytes that split at line ends (see MirrorLogScanner.split), or
+	 * as a whole when it is smaller, compressed or an archive. The events of the ranges in order are the
+	 * events of the file.
+	 */
+	static Vector<MirrorLogFile> split(File logFile, long rangeSize) {
+		Vector<MirrorLogFile> ranges = new Vector<MirrorLogFile>();
+		long [] offsets = null ;
+		try {
+			if(logFile.length() > rangeSize && !MirrorArchive.isArchive(logFile))
+				offsets = MirrorLogScanner.split(logFile, rangeSize);
+		} catch(IOException iox) {
+			offsets = null ; // read as a whole: the error comes up there
+		}
+		if(offsets == null || offsets.length == 0) {
+			ranges.addElement(new MirrorLogFile(logFile));
+			return ranges ;
+		}
+		long from = 0L ;
+		for(int o=0;o < offsets.length;o++) {
+			ranges.addElement(new MirrorLogFile(logFile, from, offsets[o], false));
+			from = offsets[o];
+		}
+		ranges.addElement(new MirrorLogFile(logFile, from, Long.MAX_VALUE, true));
+		return ranges ;
+	}
+
+	public MirrorLogFile call() {
+		MirrorLogScanner scanner = null ;
+		try {
+			long begin = System.nanoTime();
+			scanner = (to < 0L)?MirrorLogScanner.open(file):new MirrorLogScanner(file, from, to);
+			MirrorEvent ev = null ;
+			while((ev = scanner.next()) != null)
+				events.addElement(ev);
+			scanner.close();
+			if(MirrorSpeeds.runStats != null) MirrorSpeeds.runStats.scanned(file, scanner, System.nanoTime() - begin);
+		} catch(IOException iox) {
+			error = iox ;
+			if(scanner != null) try { scanner.close(); } catch(IOException closingException) { }
+		}
+		return this ;
+	}
+}
@@ -0,0 +1,283 @@
+import java.io.* ;
+import java.nio.* ;
+import java.nio.channels.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+
+/**
+ * Scans a SnapMirror audit log memory-mapped, on the raw bytes (the logs are ASCII).
+ * Date/time, command and the name=value payload of a line are located by offset, the payload
+ * fields by MirrorFields, and Strings are only made for the fields a MirrorEvent keeps - and only
+ * on lines that carry an Operation-Uuid.
+ * Lines end at \n, \r or \r\n, like with BufferedReader.readLine().
+ * Compressed files and archives are read through MirrorArchive (see open()).
+ */
+class MirrorLogScanner
+{
+	final static int REGION_SIZE = 64 << 20 ; // bytes mapped at a time (grows for a longer line)
+
+	final static byte [] PAYLOAD_MARK    = ascii("]:");
+	final static byte [] RESUME_REQUIRED = ascii(MirrorSpeeds.RESUME_REQUIRED);
+
+	static byte [] ascii(String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	FileChannel channel = null ;
+	MirrorArchive archive = null ; // or chunks of complete lines from a compressed file or archive
+	long fileSize  = 0L ;
+	long regionPos = 0L ;     // file offset of the mapped region
+	ByteBuffer region = null ;
+	int pos = 0 ;             // next line start in region
+
+	int lineStart = 0 ;
+	int lineEnd   = 0 ;
+	long lines    = 0L ;
+	long startPos = 0L ;   // file offset the scanning started at
+	long chunkBytes = 0L ; // bytes of the archive chunks taken
+
+	final boolean timed = MirrorSpeeds.runStats != null ; // --stats: count here, added up per file (see MirrorRunStats)
+	long events = 0L ;
+	long dateNanos = 0L ;
+	long dates = 0L ;
+
+	final MirrorFields fields = new MirrorFields();
+	MirrorFilter.IdSet skipped = null ; // operations dropped at their Start (see MirrorFilter)
+
+	MirrorLogScanner(File logFile) throws IOException {
+		if(logFile == null) throw new NullPointerException("Log file required (null).");
+		channel  = new RandomAccessFile(logFile, "r").getChannel();
+		fileSize = channel.size();
+	}
+	/** Scans the lines in [from, to) of a log file only: a byte range that starts and ends at a line end. */
+	MirrorLogScanner(File logFile, long from, long to) throws IOException {
+		this(logFile);
+		fileSize  = Math.min(to, fileSize);
+		regionPos = startPos = Math.min(from, fileSize);
+	}
+	/** Scans the chunks an archive reader thread hands over, instead of a file. */
+	MirrorLogScanner(MirrorArchive archive) {
+		if(archive == null) throw new NullPointerException("Archive required (null).");
+		this.archive = archive ;
+	}
+	/** Scans the remaining bytes of a buffer (heap or direct) instead of a file. */
+	MirrorLogScanner(ByteBuffer buffer) {
+		if(buffer == null) throw new NullPointerException("Buffer required (null).");
+		setRegion(buffer.slice(), 0L);
+		fileSize = region.limit();
+	}
+
+	/** Scanner for a log file, or for the SnapMirror logs in it when it is compressed or an archive. */
+	static MirrorLogScanner open(File logFile) throws IOException {
+		if(MirrorArchive.isArchive(logFile))
+			return new MirrorLogScanner(MirrorArchive.start(logFile, MirrorArchive.SNAPMIRROR_LOG));
+		return new MirrorLogScanner(logFile);
+	}
+
+	/**
+	 * Offsets that split a file into byte ranges of about the given size, each just after a '\n', so that
+	 * every line falls in one range: [0, o1), [o1, o2), ... [on, size). Empty for a single range.
+	 */
+	static long [] split(File logFile, long rangeSize) throws IOException {
+		long size = logFile.length();
+		long [] offsets = new long [(int)Math.min(Integer.MAX_VALUE - 1, Math.max(0L, (size - 1) / rangeSize))];
+		int count = 0 ;
+		RandomAccessFile in = new RandomAccessFile(logFile, "r");
+		try {
+			byte [] buf = new byte [4096];
+			long from = rangeSize ;
+			while(count < offsets.length && from < size) {
+				long at = from - 1 ; // a line ending just before from ends the range at from
+				long cut = -1L ;
+				in.seek(at);
+				for(int n;cut < 0L && (n = in.read(buf)) > 0;at += n)
+					for(int i=0;i < n;i++)
+						if(buf[i] == '\n') {
+							cut = at + i + 1 ;
+							break ;
+						}
+				if(cut < 0L || cut >= size) break ;
+				offsets[count++] = cut ;
+				from = cut + rangeSize ;
+			}
+		} finally {
+			in.close();
+		}
+		return Arrays.copyOf(offsets, count);
+	}
+
+	void close() throws IOException {
+		region = null ;
+		if(channel != null) channel.close(); // closes the RandomAccessFile as well
+		channel = null ;
+		if(archive != null) archive.close();
+		archive = null ;
+	}
+
+	/** Next line that carries an operation, or null at the end of the file. */
+	MirrorEvent next() throws IOException {
+		while(nextLine()) {
+			MirrorEvent ev = scanLine();
+			if(ev != null) {
+				events++ ;
+				return ev ;
+		}	}
+		return null ;
+	}
+
+	long getLines() {
+		return lines ;
+	}
+	/** Bytes scanned so far: of the file (range), or uncompressed of an archive. */
+	long bytesRead() {
+		return (archive != null)?chunkBytes:regionPos + pos - startPos ;
+	}
+
+	void setRegion(ByteBuffer buf, long filePos) {
+		region = buf ;
+		regionPos = filePos ;
+		pos = 0 ;
+	}
+
+	/** Frames the next line as [lineStart, lineEnd) in region, mapping the next part of the file when needed. */
+	boolean nextLine() throws IOException {
+		while(true) {
+			if(region != null) {
+				int limit = region.limit();
+				int i = pos ;
+				while(i < limit) {
+					byte b = region.get(i);
+					if(b == '\n' || b == '\r') break ;
+					i++ ;
+				}
+				boolean lastRegion = regionPos + limit >= fileSize ;
+				if(i < limit && (i+1 < limit || lastRegion || region.get(i) == '\n')) { // a '\r' at the region end could be followed by '\n'
+					lineStart = pos ;
+					lineEnd   = i ;
+					pos = i+1 ;
+					if(region.get(i) == '\r' && pos < limit && region.get(pos) == '\n') pos++ ;
+					lines++ ;
+					return true ;
+				}
+				if(lastRegion && pos < limit) {
+					lineStart = pos ; // last line without line end
+					lineEnd   = limit ;
+					pos = limit ;
+					lines++ ;
+					return true ;
+				}
+				if(lastRegion && archive == null) return false ;
+			}
+			if(archive != null) {
+				ByteBuffer chunk = archive.nextChunk();
+				if(chunk == null) return false ;
+				setRegion(chunk, 0L);
+				fileSize = chunk.limit(); // each chunk ends at a line end
+				chunkBytes += fileSize ;
+				continue ;
+			}
+			if(channel == null) return false ;
+			map(regionPos + pos);
+		}
+	}
+
+	void map(long from) throws IOException {
+		long size = REGION_SIZE ;
+		if(region != null && from == regionPos) size = 2L * region.limit(); // one line did not fit
+		if(size > fileSize - from) size = fileSize - from ;
+		if(size > Integer.MAX_VALUE) size = Integer.MAX_VALUE ;
+		if(region != null && from == regionPos && size <= region.limit())
+			throw new IOException("Line at offset "+from+" does not fit in "+region.limit()+" bytes.");
+		setRegion(channel.map(FileChannel.MapMode.READ_ONLY, from, size), from);
+	}
+
+	/** The current line as an event, null when it has no operation (see MirrorSpeeds.parseLine). */
+	MirrorEvent scanLine() {
+		ByteBuffer b = region ;
+		int s = lineStart, e = lineEnd ;
+
+		int open = indexOf(b, s, e, (byte)'['); // the operation name is just before
+		if(open <= s) return null ;
+		int preIdx = open ;
+		while(preIdx > s && b.get(preIdx-1) != ' ') preIdx-- ;
+		if(preIdx <= s || preIdx >= open-1) return null ;
+
+		int idx = indexOf(b, s, e, PAYLOAD_MARK);
+		if(idx <= s) return null ;
+		while(idx < e && b.get(idx) != ' ') idx++ ;
+		if(idx >= e) return null ;
+
+		if(!fields.scan(b, idx, e)) return null ; // no Operation-Uuid
+
+		MirrorFilter filter = MirrorSpeeds.filter ;
+		boolean start = false ;
+		if(filter != null && filter.checksStarts()) {
+			if(skipped == null) skipped = filter.skipped.get();
+			int idStart = fields.start[MirrorFields.OP_ID], idEnd = fields.end[MirrorFields.OP_ID];
+			if(skipped.contains(b, idStart, idEnd)) { // the rest of a filtered operation
+				if(MirrorFilter.isEnd(b, fields.start[MirrorFields.ACTION], fields.end[MirrorFields.ACTION])) skipped.remove(b, idStart, idEnd);
+				return null ;
+			}
+			start = MirrorFilter.isStart(b, fields.start[MirrorFields.ACTION], fields.end[MirrorFields.ACTION]);
+			if(start && (!filter.acceptsOperation(b, preIdx, open) || !filter.acceptsDestination(b, fields.start[MirrorFields.DEST], fields.end[MirrorFields.DEST]))) {
+				skipped.add(b, idStart, idEnd);
+				return null ;
+		}	}
+
+		int ds = s, de = preIdx ;
+		while(ds < de && (b.get(ds) & 0xff) <= ' ') ds++ ;
+		while(de > ds && (b.get(de-1) & 0xff) <= ' ') de-- ;
+		String dateTime = null ;
+		long seconds = -1L ;
+		if(start && filter.checksTimes()) { // only the date text, the event is built when the start is in
+			dateTime = fields.text(ds, de);
+			seconds = secondsOf(dateTime);
+			if(!filter.acceptsStart(seconds)) {
+				skipped.add(b, fields.start[MirrorFields.OP_ID], fields.end[MirrorFields.OP_ID]);
+				return null ;
+		}	}
+
+		MirrorEvent ev = new MirrorEvent();
+		ev.opCmd = fields.text(preIdx, open);
+		ev.dateTime = (dateTime != null)?dateTime:fields.text(ds, de);
+		ev.action   = fields.get(MirrorFields.ACTION);
+		ev.setId(fields);
+		ev.destPath = fields.get(MirrorFields.DEST);
+		ev.status   = fields.get(MirrorFields.STATUS);
+		ev.transfer = fields.get(MirrorFields.XFR);
+		ev.message  = fields.get(MirrorFields.MSG);
+		if(MirrorSpeeds.ACTION_RESUME.equals(ev.action))
+			ev.resumeRequired = indexOf(b, s, e, RESUME_REQUIRED) > s ;
+		if(dateTime != null)
+			ev.seconds = seconds ; // converted above
+		else
+		if(ev.keepsTime())
+			ev.seconds = secondsOf(ev.dateTime);
+		return ev ;
+	}
+
+	/** Seconds of a logged date/time, -1 when it does not convert; timed for --stats. */
+	long secondsOf(String dateTime) {
+		if(!timed) return Math.max(-1L, MirrorSpeeds.secondsOf(dateTime));
+		long t = System.nanoTime();
+		long seconds = Math.max(-1L, MirrorSpeeds.secondsOf(dateTime));
+		dateNanos += System.nanoTime() - t ;
+		dates++ ;
+		return seconds ;
+	}
+
+	static int indexOf(ByteBuffer b, int from, int to, byte ch) {
+		for(int i=from;i < to;i++)
+			if(b.get(i) == ch) return i ;
+		return -1 ;
+	}
+	static int indexOf(ByteBuffer b, int from, int to, byte [] pattern) {
+		int last = to - pattern.length ;
+		for(int i=from;i <= last;i++) {
+			int j = 0 ;
+			while(j < pattern.length && b.get(i+j) == pattern[j]) j++ ;
+			if(j == pattern.length) return i ;
+		}
+		return -1 ;
+	}
+}
@@ -0,0 +1,157 @@
+import java.io.* ;
+import java.net.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+import com.sun.net.httpserver.* ;
+
+/**
+ * Metrics per destination for Prometheus (--metrics) while following the logs: transfers, failures, bytes,
+ * transfer seconds and resumes as counters, the speed and end time of the last transfer and the operations
+ * in flight as gauges. They are added up as the Starts and Ends are applied, so a scrape only formats one
+ * row per destination. Served in the Prometheus text format by the HTTP server of the JDK at /metrics.
+ * Thread safe.
+ */
+class MirrorMetrics
+{
+	final static String PATH = "/metrics" ;
+	final static String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8" ;
+
+	final MirrorSymbols destinations = new MirrorSymbols();
+	long [] transfers = new long [64]; // successful
+	long [] failures  = new long [64];
+	long [] bytes     = new long [64];
+	long [] seconds   = new long [64];
+	long [] resumes   = new long [64];
+	long [] lastSpeed = new long [64]; // bytes per second, -1 when not known
+	long [] lastEnd   = new long [64]; // seconds since 2000, -1 before the first End
+	int  [] inFlight  = new int  [64];
+	int rows = 0 ;
+	HttpServer server = null ;
+
+	/** Serves the metrics on [host:]port until the program ends. */
+	void serve(String address) throws IOException {
+		int colon = address.lastIndexOf(':');
+		int port = Integer.parseInt(address.substring(colon+1));
+		InetSocketAddress bind = (colon < 0)?new InetSocketAddress(port):new InetSocketAddress(address.substring(0, colon), port);
+		server = HttpServer.create(bind, 0);
+		server.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					String method = exchange.getRequestMethod();
+					if(!"GET".equals(method) && !"HEAD".equals(method)) {
+						exchange.sendResponseHeaders(405, -1L);
+						return ;
+					}
+					byte [] body = scrape().getBytes(StandardCharsets.UTF_8);
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, "HEAD".equals(method)?-1L:body.length);
+					if(!"HEAD".equals(method)) exchange.getResponseBody().write(body);
+				} finally {
+					exchange.close();
+		}	}	});
+		server.start();
+		MirrorSpeeds.log("Serving metrics at http://"+address+PATH);
+	}
+
+	int row(String dest) {
+		int d = destinations.id(dest);
+		if(d >= transfers.length) {
+			int size = Math.max(2*transfers.length, d+1);
+			transfers = Arrays.copyOf(transfers, size);
+			failures  = Arrays.copyOf(failures, size);
+			bytes     = Arrays.copyOf(bytes, size);
+			seconds   = Arrays.copyOf(seconds, size);
+			resumes   = Arrays.copyOf(resumes, size);
+			lastSpeed = Arrays.copyOf(lastSpeed, size);
+			lastEnd   = Arrays.copyOf(lastEnd, size);
+			inFlight  = Arrays.copyOf(inFlight, size);
+		}
+		if(d == rows) lastSpeed[rows] = lastEnd[rows++] = -1L ; // new destination
+		return d ;
+	}
+
+	/** An operation started. */
+	synchronized void started(MirrorSpeeds ms) {
+		inFlight[row(ms.getDestination())]++ ;
+	}
+
+	/** An operation ended; counted is false when it is filtered out (only no longer in flight). */
+	synchronized void ended(MirrorSpeeds ms, boolean counted) {
+		int d = row(ms.getDestination());
+		if(inFlight[d] > 0) inFlight[d]-- ;
+		if(!counted) return ;
+		resumes[d] += ms.getResumeCount();
+		lastEnd[d] = ms.getEndSeconds();
+		if(!ms.wasSuccess()) {
+			failures[d]++ ;
+			lastSpeed[d] = -1L ;
+			return ;
+		}
+		transfers[d]++ ;
+		long size = ms.getTransferBytes();
+		int  secs = ms.getTransferSeconds();
+		if(size > 0L) bytes[d] += size ;
+		if(secs > 0) seconds[d] += secs ;
+		lastSpeed[d] = (size >= 0L && secs > 0)?size / secs:-1L ;
+	}
+
+	/** All metrics in the Prometheus text format, destinations sorted by name. */
+	String scrape() {
+		StringBuilder buf = new StringBuilder(4096);
+		synchronized(this) {
+			String [] dests = MirrorStats.sortedNames(destinations);
+			int [] ids = new int [dests.length];
+			for(int i=0;i < dests.length;i++) ids[i] = destinations.find(dests[i]);
+			metric(buf, "mirrorspeeds_transfers_total", "counter", "Successful transfers.", dests, ids, transfers);
+			metric(buf, "mirrorspeeds_transfer_failures_total", "counter", "Failed transfers.", dests, ids, failures);
+			metric(buf, "mirrorspeeds_transferred_bytes_total", "counter", "Bytes of the successful transfers.", dests, ids, bytes);
+			metric(buf, "mirrorspeeds_transfer_seconds_total", "counter", "Seconds of the successful transfers.", dests, ids, seconds);
+			metric(buf, "mirrorspeeds_resumes_total", "counter", "Resumes after a timeout of the ended transfers.", dests, ids, resumes);
+			metric(buf, "mirrorspeeds_last_transfer_speed_bytes_per_second", "gauge", "Speed of the last successful transfer.", dests, ids, lastSpeed);
+			long [] ends = new long [lastEnd.length];
+			for(int d=0;d < ends.length;d++) ends[d] = (lastEnd[d] < 0L)?-1L:MirrorWriter.epoch(lastEnd[d]);
+			metric(buf, "mirrorspeeds_last_transfer_end_timestamp_seconds", "gauge", "Unix time of the last End.", dests, ids, ends);
+			long [] flying = new long [inFlight.length];
+			for(int d=0;d < flying.length;d++) flying[d] = inFlight[d];
+			metric(buf, "mirrorspeeds_operations_in_flight", "gauge", "Operations started and not yet ended.", dests, ids, flying);
+		}
+		buf.append("# HELP mirrorspeeds_skipped_lines_total Log lines that could not be used.\n");
+		buf.append("# TYPE mirrorspeeds_skipped_lines_total counter\n");
+		buf.append("mirrorspeeds_skipped_lines_total ");
+		buf.append(MirrorSpeeds.problems.count());
+		buf.append('\n');
+		return new String(buf);
+	}
+
+	/** One metric with a sample per destination; negative values (not known) are left out. */
+	static void metric(StringBuilder buf, String name, String type, String help, String [] dests, int [] ids, long [] values) {
+		buf.append("# HELP ");
+		buf.append(name);
+		buf.append(' ');
+		buf.append(help);
+		buf.append("\n# TYPE ");
+		buf.append(name);
+		buf.append(' ');
+		buf.append(type);
+		buf.append('\n');
+		for(int i=0;i < dests.length;i++) {
+			long value = values[ids[i]];
+			if(value < 0L) continue ;
+			buf.append(name);
+			buf.append("{destination=\"");
+			label(buf, dests[i]);
+			buf.append("\"} ");
+			buf.append(value);
+			buf.append('\n');
+	}	}
+
+	static void label(StringBuilder buf, String value) {
+		for(int i=0;i < value.length();i++) {
+			char c = value.charAt(i);
+			if(c == '\\' || c == '"') buf.append('\\');
+			if(c == '\n')
+				buf.append("\\n");
+			else
+				buf.append(c);
+	}	}
+}
@@ -0,0 +1,145 @@
+import java.util.* ;
+
+/**
+ * Rows of the operations by Operation-Uuid, with the UUID as two longs (see MirrorFields.uuid()) instead of
+ * its 36 char text: no String hashing and no objects per lookup. The table is split into stripes by hash,
+ * each an open addressing (linear probing) table over primitive arrays with a lock of its own, so threads
+ * that look up or add different operations rarely wait for each other. Ids that are no UUID go to a small
+ * map by text. Thread safe.
+ */
+class MirrorOpTable
+{
+	final static int STRIPES = 16 ; // power of two
+	final static int STRIPE_BITS = 4 ;
+
+	final Stripe [] stripes = new Stripe [STRIPES];
+	final HashMap<String,Integer> others = new HashMap<String,Integer>(); // ids that are no UUID
+
+	MirrorOpTable() {
+		for(int s=0;s < STRIPES;s++) stripes[s] = new Stripe();
+	}
+
+	static int hash(long high, long low) {
+		long h = (high ^ (low * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL ;
+		return (int)(h ^ (h >>> 32));
+	}
+
+	/** Row of an operation, MirrorStore.NONE when it is not in the table. */
+	int get(long high, long low) {
+		int h = hash(high, low);
+		return stripes[h >>> (32 - STRIPE_BITS)].get(high, low, h);
+	}
+	void put(long high, long low, int row) {
+		int h = hash(high, low);
+		stripes[h >>> (32 - STRIPE_BITS)].put(high, low, h, row);
+	}
+	void remove(long high, long low) {
+		int h = hash(high, low);
+		stripes[h >>> (32 - STRIPE_BITS)].remove(high, low, h);
+	}
+
+	int get(String opId) {
+		synchronized(others) {
+			Integer row = others.get(opId);
+			return (row == null)?MirrorStore.NONE:row.intValue();
+	}	}
+	void put(String opId, int row) {
+		synchronized(others) {
+			others.put(opId, Integer.valueOf(row));
+	}	}
+	void remove(String opId) {
+		synchronized(others) {
+			others.remove(opId);
+	}	}
+
+	int size() {
+		int size = 0 ;
+		for(int s=0;s < STRIPES;s++)
+			synchronized(stripes[s]) {
+				size += stripes[s].size ;
+			}
+		synchronized(others) {
+			return size + others.size();
+	}	}
+
+	/** The rows in the table, in no particular order. */
+	int [] rows() {
+		Vector<Integer> all = new Vector<Integer>();
+		for(int s=0;s < STRIPES;s++)
+			synchronized(stripes[s]) {
+				Stripe stripe = stripes[s];
+				for(int i=0;i < stripe.slots.length;i++)
+					if(stripe.slots[i] != 0) all.addElement(Integer.valueOf(stripe.slots[i]-1));
+			}
+		synchronized(others) {
+			all.addAll(others.values());
+		}
+		int [] rows = new int [all.size()];
+		for(int r=0;r < rows.length;r++) rows[r] = all.elementAt(r).intValue();
+		return rows ;
+	}
+
+	/** One part of the table; at most half full, a removal shifts the slots after it back (no tombstones). */
+	static class Stripe
+	{
+		long [] highs = new long [64];
+		long [] lows  = new long [64];
+		int  [] slots = new int [64]; // 1 + row, 0 when free
+		int size = 0 ;
+
+		synchronized int get(long high, long low, int h) {
+			int mask = slots.length-1 ;
+			for(int s=h & mask;slots[s] != 0;s=(s+1) & mask)
+				if(highs[s] == high && lows[s] == low) return slots[s]-1 ;
+			return MirrorStore.NONE ;
+		}
+
+		synchronized void put(long high, long low, int h, int row) {
+			int mask = slots.length-1 ;
+			int s = h & mask ;
+			for(;slots[s] != 0;s=(s+1) & mask)
+				if(highs[s] == high && lows[s] == low) {
+					slots[s] = row+1 ;
+					return ;
+				}
+			highs[s] = high ;
+			lows[s]  = low ;
+			slots[s] = row+1 ;
+			if(++size > slots.length / 2) grow();
+		}
+
+		synchronized void remove(long high, long low, int h) {
+			int mask = slots.length-1 ;
+			int s = h & mask ;
+			while(slots[s] != 0 && (highs[s] != high || lows[s] != low)) s = (s+1) & mask ;
+			if(slots[s] == 0) return ;
+			slots[s] = 0 ;
+			size-- ;
+			for(int n=(s+1) & mask;slots[n] != 0;n=(n+1) & mask) { // move back what probed past the hole
+				int home = hash(highs[n], lows[n]) & mask ;
+				if(((n - home) & mask) >= ((n - s) & mask)) {
+					highs[s] = highs[n];
+					lows[s]  = lows[n];
+					slots[s] = slots[n];
+					slots[n] = 0 ;
+					s = n ;
+			}	}
+		}
+
+		void grow() {
+			long [] oldHighs = highs, oldLows = lows ;
+			int  [] oldSlots = slots ;
+			highs = new long [2*oldSlots.length];
+			lows  = new long [2*oldSlots.length];
+			slots = new int [2*oldSlots.length];
+			int mask = slots.length-1 ;
+			for(int i=0;i < oldSlots.length;i++)
+				if(oldSlots[i] != 0) {
+					int s = hash(oldHighs[i], oldLows[i]) & mask ;
+					while(slots[s] != 0) s = (s+1) & mask ;
+					highs[s] = oldHighs[i];
+					lows[s]  = oldLows[i];
+					slots[s] = oldSlots[i];
+		}		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * The log lines that could not be used, counted by reason instead of reported one by one: the lines are
+ * checked up front, so no exception (with its stack trace) is made for them, a few examples are kept per
+ * reason and print() logs it all once at the end. With --debug each line is reported as it comes as well.
+ * Thread safe.
+ */
+class MirrorProblems
+{
+	final static int NONE              = -1 ;
+	final static int UNKNOWN_OPERATION = 0 ;
+	final static int BAD_DESTINATION   = 1 ;
+	final static int BAD_START_TIME    = 2 ;
+	final static int BAD_END_TIME      = 3 ;
+	final static int BAD_TRANSFER      = 4 ;
+	final static int BAD_REQUEST_TIME  = 5 ;
+	final static int BAD_REQUEST       = 6 ;
+	final static String [] REASONS = {
+		"Start of an unknown operation",
+		"Start without an SVM:volume destination",
+		"Start time not readable",
+		"End time not readable",
+		"End with a transfer length that is not a number",
+		"Audit-mlog request time not readable",
+		"Audit-mlog request without snapmirror-update parameters"
+	};
+	final static int EXAMPLES = 3 ;
+
+	final long [] counts = new long [REASONS.length];
+	final String [][] examples = new String [REASONS.length][EXAMPLES];
+
+	/** Counts a problem, the example (a short description of the line) is kept for the first few. */
+	synchronized void add(int reason, String example) {
+		long seen = counts[reason]++ ;
+		if(seen < EXAMPLES) examples[reason][(int)seen] = example ;
+		if(MirrorSpeeds.debugging) MirrorSpeeds.dbg("SKIPPED: "+REASONS[reason]+": "+example);
+	}
+	synchronized long count() {
+		long total = 0L ;
+		for(int r=0;r < counts.length;r++) total += counts[r];
+		return total ;
+	}
+
+	/**
+	 * Why a Start cannot make an operation, NONE when it can: the checks of the MirrorSpeeds constructor,
+	 * with the start seconds already converted (negative when that failed).
+	 */
+	static int checkStart(String operation, String destPath, String startDateTime, long startSecs, String opID) {
+		if(operation == null || !MirrorSpeeds.knownOperation(operation)) return UNKNOWN_OPERATION ;
+		if(destPath == null || destPath.indexOf(':') < 0) return BAD_DESTINATION ;
+		if(startDateTime == null || startSecs < 0L || opID == null) return BAD_START_TIME ;
+		return NONE ;
+	}
+
+	/** Logs the counts and examples per reason, nothing when all lines could be used. */
+	synchronized void print() {
+		long total = count();
+		if(total == 0L) return ;
+		StringBuilder buf = new StringBuilder();
+		buf.append("Skipped ");
+		buf.append(total);
+		buf.append(" log line(s) that could not be used:");
+		for(int r=0;r < REASONS.length;r++) {
+			if(counts[r] == 0L) continue ;
+			buf.append("\n\t");
+			buf.append(REASONS[r]);
+			buf.append(": ");
+			buf.append(counts[r]);
+			for(int x=0;x < EXAMPLES && x < counts[r];x++) {
+				buf.append("\n\t\te.g. ");
+				buf.append(examples[r][x]);
+		}	}
+		MirrorSpeeds.warn(new String(buf));
+	}
+}
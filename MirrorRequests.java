@@ -0,0 +1,109 @@
+import java.util.* ;
+
+/**
+ * Time index of the snapmirror-update requests read from audit-mlogs (see MirrorSpeeds.infoFromAuditMLog).
+ * The request times are kept in a primitive array sorted once (on the first lookup after adding), shared by
+ * all destinations; a lookup finds the request for a destination nearest to a transfer start within
+ * +/- tolerance seconds by binary search, as a request is often logged a second or two before its Start.
+ * A request is kept as its items (by MirrorSpeeds.REQUEST_ITEMS index); Properties are only made when found.
+ * Not thread safe.
+ */
+class MirrorRequests
+{
+	final static int DEFAULT_TOLERANCE = 2 ; // seconds
+	final static int INITIAL_SIZE = 1024 ;
+
+	final MirrorSymbols destinations = new MirrorSymbols();
+	int tolerance = DEFAULT_TOLERANCE ;
+
+	int size = 0 ;
+	long [] seconds = new long [INITIAL_SIZE];
+	int  [] dest    = new int [INITIAL_SIZE]; // destinations id
+	String [][] details = new String [INITIAL_SIZE][];
+	boolean sorted = true ;
+
+	/** Adds a request logged at the given seconds (see MirrorSpeeds.convertToSeconds). */
+	void add(long secs, String [] items) {
+		if(size == seconds.length) {
+			seconds = Arrays.copyOf(seconds, 2*size);
+			dest    = Arrays.copyOf(dest, 2*size);
+			details = Arrays.copyOf(details, 2*size);
+		}
+		if(size > 0 && secs < seconds[size-1]) sorted = false ;
+		seconds[size] = secs ;
+		dest[size]    = destinations.id(items[MirrorAuditScanner.TARGET]);
+		details[size] = items ;
+		size++ ;
+	}
+	int size() {
+		return size ;
+	}
+
+	/** Sorts by time, requests of the same second staying in the order they were added. */
+	void sort() {
+		if(sorted) return ;
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE ;
+		for(int i=0;i < size;i++) {
+			if(seconds[i] < min) min = seconds[i] ;
+			if(seconds[i] > max) max = seconds[i] ;
+		}
+		if(max - min > Integer.MAX_VALUE)
+			throw new IllegalStateException("Requests span more than "+Integer.MAX_VALUE+" seconds.");
+
+		long [] keys = new long [size]; // seconds offset and the old index in one sortable long
+		for(int i=0;i < size;i++) keys[i] = ((seconds[i] - min) << 32) | i ;
+		Arrays.sort(keys);
+
+		long [] sortedSecs = new long [seconds.length];
+		int  [] sortedDest = new int [dest.length];
+		String [][] sortedDetails = new String [details.length][];
+		for(int i=0;i < size;i++) {
+			int old = (int)keys[i];
+			sortedSecs[i]    = seconds[old];
+			sortedDest[i]    = dest[old];
+			sortedDetails[i] = details[old];
+		}
+		seconds = sortedSecs ;
+		dest    = sortedDest ;
+		details = sortedDetails ;
+		sorted  = true ;
+	}
+
+	/** Index of the first request logged at or after the given seconds. */
+	int lowerBound(long secs) {
+		int lo = 0, hi = size ;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1 ;
+			if(seconds[mid] < secs) lo = mid+1 ;
+			else hi = mid ;
+		}
+		return lo ;
+	}
+
+	/**
+	 * The request for a destination logged nearest to the given seconds, within +/- tolerance; null when none.
+	 * Of requests logged equally far off the earlier one wins, of requests logged in the same second the last one.
+	 */
+	Properties find(long secs, String destPath) {
+		int id = destinations.find(destPath);
+		if(id < 0) return null ;
+		sort();
+
+		int best = MirrorStore.NONE ;
+		long bestDelta = Long.MAX_VALUE ;
+		for(int i=lowerBound(secs - tolerance);i < size && seconds[i] <= secs + tolerance;i++)
+			if(dest[i] == id) {
+				long delta = Math.abs(seconds[i] - secs);
+				if(delta < bestDelta || (delta == bestDelta && seconds[i] == seconds[best])) {
+					best = i ;
+					bestDelta = delta ;
+			}	}
+		return (best < 0)?null:toProperties(details[best]);
+	}
+	static Properties toProperties(String [] items) {
+		Properties p = new Properties();
+		for(int i=0;i < items.length;i++)
+			if(items[i] != null) p.setProperty(MirrorSpeeds.REQUEST_ITEMS[i], items[i]);
+		return p ;
+	}
+}
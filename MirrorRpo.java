@@ -0,0 +1,103 @@
+import java.util.* ;
+
+/**
+ * Effective RPO per destination (--rpo): the gaps between the ends of consecutive successful scheduled and
+ * manual updates, with their maximum and percentiles (from a fixed size histogram, see MirrorStats), and the
+ * current lag: from the last update up to the latest time in the logs. Gaps above the threshold are flagged
+ * as warnings as they are found. The transfers are taken as they are reported (by start time per destination)
+ * or as they end when following, so nothing is sorted or kept beyond one row per destination. An update that
+ * ends before the last one seen makes no gap. Not thread safe.
+ */
+class MirrorRpo
+{
+	final static String [] UPDATES = { "ScheduledUpdate", "ManualUpdate" };
+
+	final long threshold ; // seconds
+	final MirrorSymbols destinations = new MirrorSymbols();
+	Lag [] lags = new Lag [64]; // by destinations id
+	long latest = -1L ; // latest start or end time seen
+
+	MirrorRpo(long threshold) {
+		this.threshold = threshold ;
+	}
+
+	/** The updates of one destination. */
+	static class Lag
+	{
+		long lastEnd = -1L ;
+		String lastEndTime = null ;
+		long updates = 0L, overThreshold = 0L ;
+		final MirrorStats.Histogram gaps = new MirrorStats.Histogram();
+	}
+
+	static boolean isUpdate(String operation) {
+		for(int u=0;u < UPDATES.length;u++)
+			if(UPDATES[u].equals(operation)) return true ;
+		return false ;
+	}
+
+	/** Takes an operation: the time it ran, and when it is a successful update the gap since the last one. */
+	void add(MirrorSpeeds ms) {
+		if(ms.getStartSeconds() > latest) latest = ms.getStartSeconds();
+		if(!ms.hasEnded()) return ;
+		long end = ms.getEndSeconds();
+		if(end > latest) latest = end ;
+		if(!ms.wasSuccess() || !isUpdate(ms.getOperation())) return ;
+
+		Lag lag = lag(ms.getDestination());
+		lag.updates++ ;
+		if(end <= lag.lastEnd) return ;
+		if(lag.lastEnd >= 0L) {
+			long gap = end - lag.lastEnd ;
+			lag.gaps.add(gap);
+			if(gap > threshold) {
+				lag.overThreshold++ ;
+				MirrorSpeeds.warn("RPO gap of "+time(gap)+" for "+ms.getDestination()
+					+": no update ended from "+lag.lastEndTime+" to "+ms.getEndTime());
+		}	}
+		lag.lastEnd = end ;
+		lag.lastEndTime = ms.getEndTime();
+	}
+
+	Lag lag(String dest) {
+		int d = destinations.id(dest);
+		if(d >= lags.length) lags = Arrays.copyOf(lags, Math.max(2*lags.length, d+1));
+		if(lags[d] == null) lags[d] = new Lag();
+		return lags[d];
+	}
+
+	/** Logs per destination (sorted by name): updates, gap maximum and percentiles, current lag. */
+	void print() {
+		MirrorSpeeds.log("RPO per destination (gaps between successful updates, threshold "+time(threshold)+"):");
+		String [] dests = MirrorStats.sortedNames(destinations);
+		for(int i=0;i < dests.length;i++) {
+			Lag lag = lags[destinations.find(dests[i])];
+			StringBuilder buf = new StringBuilder();
+			buf.append('\t');
+			buf.append(dests[i]);
+			buf.append(": updates=");
+			buf.append(lag.updates);
+			if(lag.gaps.count() > 0L) {
+				buf.append(", max gap=");
+				buf.append(time(lag.gaps.max));
+				for(int p=0;p < MirrorStats.PERCENTILES.length;p++) {
+					buf.append(" p");
+					buf.append((int)Math.round(100.0 * MirrorStats.PERCENTILES[p]));
+					buf.append('=');
+					buf.append(time(lag.gaps.percentile(MirrorStats.PERCENTILES[p])));
+			}	}
+			buf.append(", current lag=");
+			buf.append(time(latest - lag.lastEnd));
+			buf.append(" (since ");
+			buf.append(lag.lastEndTime);
+			buf.append(')');
+			if(latest - lag.lastEnd > threshold) buf.append(" OVER THRESHOLD");
+			buf.append(", gaps over threshold=");
+			buf.append(lag.overThreshold);
+			MirrorSpeeds.log(new String(buf));
+	}	}
+
+	static String time(long seconds) {
+		return MirrorSpeeds.secondsToTime((int)Math.min(seconds, Integer.MAX_VALUE));
+	}
+}
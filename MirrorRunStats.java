@@ -0,0 +1,196 @@
+import java.io.* ;
+import java.lang.management.* ;
+import java.util.* ;
+
+/**
+ * Where a run spends its time (--stats): per log file the bytes and lines read per second, the nanoseconds
+ * per stage, the lines with and without an operation, the audit-mlog requests found for a transfer or not,
+ * the peak number of operations in the store, and heap and GC use. The hot loops count into fields of their
+ * own (see MirrorLogScanner) and add them here once per file, so it is cheap enough to leave on. Printed as
+ * text or as one JSON line. Thread safe.
+ */
+class MirrorRunStats
+{
+	final static int SCAN     = 0 ; // framing the lines and reading their fields
+	final static int DATES    = 1 ; // date/time conversion (convertToSeconds)
+	final static int APPLY    = 2 ; // pairing the lines by operation in the store
+	final static int MLOG     = 3 ; // audit-mlog indexing
+	final static int REQUESTS = 4 ; // looking up the requests of the transfers (pickupRequestDetails)
+	final static int OUTPUT   = 5 ; // writing the transfers
+	final static String [] STAGES = { "scan", "dates", "apply", "mlog", "requests", "output" };
+
+	final boolean json ;
+	final long started = System.nanoTime();
+	final long [] nanos = new long [STAGES.length];
+	final long [] calls = new long [STAGES.length]; // lines, dates, events, mlog requests, transfers, transfers
+	final Vector<FileStat> files = new Vector<FileStat>();
+	long matched = 0L, unmatched = 0L ; // requests found for a transfer or not
+
+	MirrorRunStats(String format) {
+		if(!"text".equals(format) && !"json".equals(format))
+			throw new IllegalArgumentException("use text or json");
+		json = "json".equals(format);
+	}
+
+	/** Bytes, lines and operation lines read from one file (summed over its ranges), and the time it took. */
+	static class FileStat
+	{
+		final String name ;
+		long bytes = 0L, lines = 0L, operations = 0L, nanos = 0L ; // operations: requests for an audit-mlog
+		boolean mlog = false ;
+
+		FileStat(String name) {
+			this.name = name ;
+		}
+		long perSecond(long count) {
+			return (nanos <= 0L)?0L:(long)(count * 1e9 / nanos);
+		}
+	}
+
+	synchronized void add(int stage, long time, long count) {
+		nanos[stage] += time ;
+		calls[stage] += count ;
+	}
+
+	/** Counts what a scanner read of a file (or a range of it) in the given time. */
+	synchronized void scanned(File file, MirrorLogScanner scanner, long time) {
+		FileStat stat = file(file);
+		stat.bytes += scanner.bytesRead();
+		stat.lines += scanner.getLines();
+		stat.operations += scanner.events ;
+		stat.nanos += time ;
+		nanos[SCAN]  += time - scanner.dateNanos ;
+		calls[SCAN]  += scanner.getLines();
+		nanos[DATES] += scanner.dateNanos ;
+		calls[DATES] += scanner.dates ;
+	}
+	/** Counts the requests read from an audit-mlog in the given time (its lines are not counted). */
+	synchronized void scanned(File file, MirrorAuditScanner scanner, int requests, long time) {
+		FileStat stat = file(file);
+		stat.mlog = true ;
+		stat.bytes += scanner.bytesRead();
+		stat.operations += requests ;
+		stat.nanos += time ;
+		add(MLOG, time, requests);
+	}
+	FileStat file(File file) {
+		String name = file.toString();
+		for(int f=0;f < files.size();f++)
+			if(files.elementAt(f).name.equals(name)) return files.elementAt(f);
+		FileStat stat = new FileStat(name);
+		files.addElement(stat);
+		return stat ;
+	}
+
+	/** Counts a request lookup for a transfer. */
+	synchronized void request(long time, boolean found) {
+		add(REQUESTS, time, 1L);
+		if(found) matched++ ; else unmatched++ ;
+	}
+
+	/** Logs it all; peakOperations is the most operations the store held at a time. */
+	synchronized void print(long peakOperations) {
+		long elapsed = System.nanoTime() - started ;
+		long lines = 0L, operations = 0L ;
+		for(int f=0;f < files.size();f++)
+			if(!files.elementAt(f).mlog) {
+				lines += files.elementAt(f).lines ;
+				operations += files.elementAt(f).operations ;
+			}
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		long heapPeak = 0L ;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) heapPeak += pool.getPeakUsage().getUsed();
+		long allocated = -1L ; // by this thread, where the JVM tells
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			allocated = ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		List<GarbageCollectorMXBean> gcs = ManagementFactory.getGarbageCollectorMXBeans();
+		long skipped = MirrorSpeeds.problems.count();
+
+		if(json) {
+			StringBuilder buf = new StringBuilder(1024);
+			buf.append("{\"elapsed_ns\":").append(elapsed);
+			buf.append(",\"files\":[");
+			for(int f=0;f < files.size();f++) {
+				FileStat stat = files.elementAt(f);
+				buf.append((f == 0)?"{":",{").append("\"file\":");
+				jsonString(buf, stat.name);
+				buf.append(",\"bytes\":").append(stat.bytes);
+				buf.append(",\"lines\":").append(stat.lines);
+				buf.append(",\"operations\":").append(stat.operations);
+				buf.append(",\"ns\":").append(stat.nanos);
+				buf.append(",\"bytes_per_second\":").append(stat.perSecond(stat.bytes));
+				buf.append(",\"lines_per_second\":").append(stat.perSecond(stat.lines));
+				buf.append('}');
+			}
+			buf.append("],\"stages\":{");
+			for(int s=0;s < STAGES.length;s++) {
+				buf.append((s == 0)?"\"":",\"").append(STAGES[s]);
+				buf.append("\":{\"ns\":").append(nanos[s]).append(",\"count\":").append(calls[s]).append('}');
+			}
+			buf.append("},\"lines\":{\"operation\":").append(operations);
+			buf.append(",\"other\":").append(lines - operations);
+			buf.append(",\"skipped\":").append(skipped).append('}');
+			buf.append(",\"requests\":{\"matched\":").append(matched).append(",\"unmatched\":").append(unmatched).append('}');
+			buf.append(",\"peak_operations\":").append(peakOperations);
+			buf.append(",\"heap\":{\"used\":").append(heap.getUsed());
+			buf.append(",\"committed\":").append(heap.getCommitted());
+			buf.append(",\"max\":").append(heap.getMax());
+			buf.append(",\"peak\":").append(heapPeak);
+			buf.append(",\"allocated_main\":").append(allocated).append('}');
+			buf.append(",\"gc\":[");
+			for(int g=0;g < gcs.size();g++) {
+				buf.append((g == 0)?"{":",{").append("\"name\":");
+				jsonString(buf, gcs.get(g).getName());
+				buf.append(",\"count\":").append(gcs.get(g).getCollectionCount());
+				buf.append(",\"ms\":").append(gcs.get(g).getCollectionTime()).append('}');
+			}
+			buf.append("]}");
+			MirrorSpeeds.log(new String(buf));
+			return ;
+		}
+
+		MirrorSpeeds.log("Run statistics ("+millis(elapsed)+" in all):");
+		for(int f=0;f < files.size();f++) {
+			FileStat stat = files.elementAt(f);
+			MirrorSpeeds.log("\t"+stat.name+": "+MirrorSpeeds.adjustedSize(stat.bytes)+" in "+millis(stat.nanos)+" ("
+				+MirrorSpeeds.adjustedSize(stat.perSecond(stat.bytes))+"/s"
+				+(stat.mlog?"":", "+stat.perSecond(stat.lines)+" lines/s")+"), "
+				+(stat.mlog?stat.operations+" requests":stat.lines+" lines, "+stat.operations+" with an operation"));
+		}
+		StringBuilder buf = new StringBuilder("\tStages:");
+		for(int s=0;s < STAGES.length;s++)
+			if(calls[s] > 0L || nanos[s] > 0L)
+				buf.append(' ').append(STAGES[s]).append('=').append(millis(nanos[s])).append(" (").append(calls[s]).append(')');
+		MirrorSpeeds.log(new String(buf));
+		MirrorSpeeds.log("\tLines: "+operations+" with an operation, "+(lines - operations)+" other, "+skipped+" skipped as unusable");
+		if(matched + unmatched > 0L)
+			MirrorSpeeds.log("\tRequests: "+matched+" transfers with their audit-mlog request, "+unmatched+" without");
+		MirrorSpeeds.log("\tPeak operations in the store: "+peakOperations);
+		MirrorSpeeds.log("\tHeap: "+MirrorSpeeds.adjustedSize(heap.getUsed())+" used, "+MirrorSpeeds.adjustedSize(heapPeak)+" peak, "
+			+MirrorSpeeds.adjustedSize(heap.getCommitted())+" committed, "+MirrorSpeeds.adjustedSize(heap.getMax())+" max"
+			+((allocated >= 0L)?", "+MirrorSpeeds.adjustedSize(allocated)+" allocated by the main thread":""));
+		for(int g=0;g < gcs.size();g++)
+			MirrorSpeeds.log("\tGC "+gcs.get(g).getName()+": "+gcs.get(g).getCollectionCount()+" collections, "+gcs.get(g).getCollectionTime()+" ms");
+	}
+
+	static void jsonString(StringBuilder buf, String s) {
+		buf.append('"');
+		for(int i=0;i < s.length();i++) {
+			char ch = s.charAt(i);
+			if(ch == '"' || ch == '\\')
+				buf.append('\\').append(ch);
+			else
+			if(ch < ' ')
+				buf.append(String.format("\\u%04x", (int)ch));
+			else
+				buf.append(ch);
+		}
+		buf.append('"');
+	}
+
+	static String millis(long nanos) {
+		return (nanos / 1000000L)+" ms" ;
+	}
+}
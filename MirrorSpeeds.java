@@ -1,5 +1,6 @@
 import java.io.* ;
 import java.util.* ;
+import java.util.concurrent.* ;
 
 public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 {
@@ -19,7 +20,23 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		"ld", "logdebug", "debug output on stdout",
 		"h",  "help",     "shows this output",
 		"nf", "nofail",   "skip failed operations",
-		"xml","audit-mlog","Use audit-mlog extract to add extra info to each update request"
+		"xml","audit-mlog","Use audit-mlog extract to add extra info to each update request",
+		"p",  "parallel", "parse the log files concurrently, large ones in ranges (one thread per CPU)",
+		"f",  "follow",   "keep reading the (last) log file as it grows, print each transfer when it ends",
+		"xt", "xml-tolerance", "seconds an audit-mlog request may be logged before or after the transfer start (default "+MirrorRequests.DEFAULT_TOLERANCE+")",
+		"sum","summary",  "statistics per destination and operation after the transfers (count, bytes, speed and duration percentiles)",
+		"fmt","format",   "output format: text (default), csv, jsonl or bin - one record per transfer, messages go to stderr",
+		"sn", "since",    "only transfers started at or after: 24h, 30m, 7d (back from now), yyyy-MM-dd[THH:mm[:ss]] (UTC) or a logged date",
+		"un", "until",    "only transfers started at or before the given time (as with --since)",
+		"ds", "dest",     "only destinations matching the pattern (* and ? wildcards, like svm_dr:*)",
+		"o",  "op",       "only the given operation types (comma separated, like ScheduledUpdate)",
+		"st", "status",   "only transfers with the given status: success, failure or running (comma separated)",
+		"tl", "timeline", "transfers in flight and summed speed per time bucket (like 1m or 1h), overall and per SVM, with the peak windows (with --follow every ended transfer is kept until stopped)",
+		"mm", "max-memory", "memory for ended operations (like 512m or 2g), beyond that they are spilled to sorted files in the temp directory",
+		"mx", "metrics",  "with --follow: serve Prometheus metrics per destination at http://[host:]port/metrics",
+		"sts","stats",    "where the time went (text or json): bytes and lines per second per file, time per stage, line counts, peak operations, heap and GC",
+		"an", "anomalies","flag transfers the given percentage (like 80) or more slower or longer than the EWMA of their destination and operation, resume jumps and repeated failures",
+		"rp", "rpo",      "gaps between successful scheduled/manual updates per destination (max, percentiles, current lag), flagging gaps over the given time (like 1h)"
 	};
 
 	final static String HMS = "##:##:##" ; 
@@ -43,24 +60,28 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		return false ;
 	}
 
-	String          opType = null ;
-	String          opId   = null ;
-	String destinationPath = null ;
+	/** Filters from the command line, null when none (see MirrorFilter). */
+	static MirrorFilter filter = null ;
+	static MirrorProblems problems = new MirrorProblems(); // unusable lines, counted instead of reported each
+	static MirrorRunStats runStats = null ; // --stats
+	static MirrorAnomalies anomalies = null ; // --anomalies
+	static MirrorRpo rpo = null ; // --rpo
+	static MirrorSpill spill = null ; // --max-memory: ended operations leave the store
 
-	String       startTime = null ;
-	String         endTime = null ;
-	long         startSeconds = -1 ;
-	long           endSeconds = -1 ;
+	/** Store the public constructor adds its rows to. */
+	static MirrorStore defaultStore = new MirrorStore();
 
-	long      transferSize = 0L ;
-	int        resumeCount = 0 ;
-	String         endMessage = null ;
+	final MirrorStore store ; // this object is a light view on one row of the store
+	final int row ;
 
-	Properties requestDetails = null ;
-	
-	MirrorSpeeds nextElement = null ;
-	
+	MirrorSpeeds(MirrorStore store, int row) {
+		this.store = store ;
+		this.row   = row ;
+	}
 	public MirrorSpeeds(String operation, String destPath, String startDateTime, String opID) {
+		this(defaultStore, operation, destPath, startDateTime, -1L, opID);
+	}
+	MirrorSpeeds(MirrorStore store, String operation, String destPath, String startDateTime, long startSecs, String opID) { // startSecs < 0: convert startDateTime
 		if(operation == null) throw new NullPointerException("Operation string required (null)");
 		if(!knownOperation(operation)) throw new IllegalArgumentException("Unknown operation: "+operation);
 		
@@ -72,60 +93,67 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		
 		if(opID == null) throw new NullPointerException("Operation ID required (null)");
 		
-		this.opType = operation ;
-		this.destinationPath = destPath ;
-		this.startTime = startDateTime ;
-		this.startSeconds = convertToSeconds(startDateTime); 
-		this.opId = opID ;
+		long seconds = (startSecs >= 0L)?startSecs:convertToSeconds(startDateTime);
+		this.store = store ;
+		this.row   = store.add(operation, destPath, opID);
+		store.setTime(row, false, startDateTime);
+		store.startSecs[row] = seconds ; 
 	}
 	public int compareTo(MirrorSpeeds ms) {
-		int cmp = this.destinationPath.compareTo(ms.destinationPath);
+		int cmp = this.getDestination().compareTo(ms.getDestination());
 		if(cmp != 0) return cmp ;
-		cmp = this.opType.compareTo(ms.opType);
+		cmp = this.getOperation().compareTo(ms.getOperation());
 		if(cmp != 0) return cmp ;
-		cmp = (this.startSeconds > ms.startSeconds)?1:((this.startSeconds == ms.startSeconds)?0:1);
+		cmp = (this.getStartSeconds() > ms.getStartSeconds())?1:((this.getStartSeconds() == ms.getStartSeconds())?0:-1);
 		if(cmp != 0) return (cmp < 0)?-1:1 ;
-		return this.opId.compareTo(ms.opId);
+		return this.getOperationId().compareTo(ms.getOperationId());
 	}
 	public String toString() {
+		String opType     = getOperation();
+		String endTime    = getEndTime();
+		String endMessage = getEndMessage();
+		long transferSize = getTransferBytes();
+		int   resumeCount = getResumeCount();
+		Properties requestDetails = getRequestDetails();
+
 		StringBuilder buf = new StringBuilder();
-		buf.append(this.destinationPath);
+		buf.append(getDestination());
 		buf.append(" ");
-		buf.append(this.startTime);
+		buf.append(getStartTime());
 		if(debugging) {
 			buf.append('[');
-			buf.append(this.startSeconds);
+			buf.append(getStartSeconds());
 			buf.append(']');
 		}
-		if(this.endTime != null) {
-			int delta = (int)(this.endSeconds - this.startSeconds);
+		if(endTime != null) {
+			int delta = (int)(getEndSeconds() - getStartSeconds());
 			if(delta >= 0) {
 				buf.append(" to ");
-				buf.append(this.endTime);
+				buf.append(endTime);
 				if(debugging) {
 					buf.append('[');
-					buf.append(this.endSeconds);
+					buf.append(getEndSeconds());
 					buf.append(']');
 			}	}
-			if(this.transferSize < 0L) {
+			if(transferSize < 0L) {
 				buf.append(' ');
-				buf.append(this.opType);
+				buf.append(opType);
 			} else {
 				Vector<String> infoAtEnd = new Vector<String>();
-				if(this.endMessage != null && this.endMessage.length() > 0) {
-					StringTokenizer tokens = new StringTokenizer(this.endMessage, ";");
+				if(endMessage != null && endMessage.length() > 0) {
+					StringTokenizer tokens = new StringTokenizer(endMessage, ";");
 					while(tokens.hasMoreElements()) {
 						String msg = tokens.nextToken();
 						boolean found = false;
 						for(int ht=0;!found && ht < HANDLED_TYPES;ht++)
-							if(KNOWN_OPERATIONS[ht].equals(this.opType)) {
+							if(KNOWN_OPERATIONS[ht].equals(opType)) {
 								found = true ;
 								buf.append(SHOW_OPERATIONS[ht]);
 								if(msg.startsWith(SUCCESS_MESSAGE)) {
 									buf.append(" transferred ");
-									buf.append(indent(""+this.transferSize, 11));
+									buf.append(indent(""+transferSize, 11));
 									buf.append(" bytes (");
-									buf.append(indent(adjustedSize(this.transferSize), 8));
+									buf.append(indent(adjustedSize(transferSize), 8));
 									buf.append(") in ");
 									int tSecs = getTransferSeconds();
 									buf.append(indent(secondsToTime(tSecs),11));
@@ -136,11 +164,11 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 										buf.append(']');
 									}
 									buf.append(", transfer-speed=");
-									buf.append(indent(transferSpeed(this.transferSize, tSecs),10));
+									buf.append(indent(transferSpeed(transferSize, tSecs),10));
 									
-									if(this.requestDetails != null) {
+									if(requestDetails != null) {
 										buf.append(" REQ: ");
-										buf.append(toInfo(this.requestDetails));
+										buf.append(toInfo(requestDetails));
 									}
 								} else
 								if(msg.startsWith(FAILURE_MESSAGE)) {
@@ -165,96 +193,113 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 	}
 	
 	void appendMessage(String msg) {
-		if(this.endMessage == null) this.endMessage = msg ;
-		else this.endMessage = this.endMessage + ";"+ msg ;
+		store.addMessage(row, msg);
 	}
 	public void addInfoMessage(String message) {
 		appendMessage(INFO_MESSAGE+message);
 	}
+	public void addResume() {
+		store.resumes[row]++ ;
+	}
 	
 	public void setFailureEnd(String endDateTime, String message) {
+		setFailureEnd(endDateTime, -1L, message);
+	}
+	void setFailureEnd(String endDateTime, long endSecs, String message) { // endSecs < 0: convert endDateTime
 		if(endDateTime == null) throw new NullPointerException("Ending time required (null)");
 		if(hashNumbers(endDateTime).indexOf(HMS) < 0) throw new IllegalArgumentException("Ending time should contain HH:mm:ss, not: "+endDateTime);
 
-		this.endTime = endDateTime ;
-		this.endSeconds = convertToSeconds(endDateTime);
+		store.setTime(row, true, endDateTime);
+		store.endSecs[row] = (endSecs >= 0L)?endSecs:convertToSeconds(endDateTime);
 		
 		appendMessage((message != null)?FAILURE_MESSAGE+": "+message:FAILURE_MESSAGE);
 	}
 	public void setSuccessEnd(String endDateTime, long transferLength) {
+		setSuccessEnd(endDateTime, -1L, transferLength);
+	}
+	void setSuccessEnd(String endDateTime, long endSecs, long transferLength) { // endSecs < 0: convert endDateTime
 		if(endDateTime == null) throw new NullPointerException("Ending time required (null)");
 		if(hashNumbers(endDateTime).indexOf(HMS) < 0) throw new IllegalArgumentException("Ending time should contain HH:mm:ss, not: "+endDateTime);
 
-		this.endTime = endDateTime ;
-		this.endSeconds = convertToSeconds(endDateTime);
+		store.setTime(row, true, endDateTime);
+		store.endSecs[row] = (endSecs >= 0L)?endSecs:convertToSeconds(endDateTime);
 		
-		this.transferSize = transferLength ;
-		this.endMessage = SUCCESS_MESSAGE;
+		store.bytes[row] = transferLength ;
+		store.setMessage(row, SUCCESS_MESSAGE);
 	}
 	
 	public void addEntry(MirrorSpeeds ms) {
-		if(ms == this) throw new RuntimeException("Cannot add MirrorSpeed object to itself.");
-		if(this.nextElement == null) this.nextElement = ms ;
-		else 
-		if(ms != this.nextElement) 
-		{ // hang at the end
-			MirrorSpeeds msElement = this.nextElement ;
-			while(msElement.nextElement != null && ms != msElement.nextElement) msElement = msElement.nextElement ;
-			msElement.nextElement = ms ; // was already if it hit the first condition :)
+		if(ms.store != this.store) throw new IllegalArgumentException("Cannot add MirrorSpeed object of another store.");
+		if(ms.row == this.row) throw new RuntimeException("Cannot add MirrorSpeed object to itself.");
+		int [] next = store.next ;
+		int id = store.dest[row];
+		if(store.dest[ms.row] == id && id < store.destHead.length && store.destHead[id] == row) { // a destination chain: O(1)
+			if(store.destTail[id] != ms.row) store.append(ms.row);
+			return ;
 		}
+		int msElement = this.row ;
+		while(next[msElement] >= 0 && ms.row != next[msElement]) msElement = next[msElement] ; // hang at the end
+		next[msElement] = ms.row ; // was already if it hit the condition :)
 	}
 	public MirrorSpeeds nextEntry() {
-		return this.nextElement ;
+		return store.view(store.next[row]);
 	}
 
 	public String getOperation() {
-		return this.opType ;
+		return store.operations.name(store.opType[row]);
+	}
+	public String getOperationId() {
+		return store.opIds[row];
 	}
 	public String getDestination() {
-		return this.destinationPath ;
+		return store.destinations.name(store.dest[row]);
 	}
 	public String getStartTime() {
-		return this.startTime ;
+		return store.getTime(row, false);
 	}
 	public long getStartSeconds() {
-		return this.startSeconds ;
+		return store.startSecs[row];
 	}
 
 	public boolean hasEnded() {
-		return this.endSeconds >= 0 && this.endMessage != null ;
+		return store.endSecs[row] >= 0 && store.hasMessage(row);
 	}
 	public boolean wasSuccess() {
-		return (this.endMessage == null)?false:this.endMessage.startsWith(SUCCESS_MESSAGE);
+		String endMessage = store.firstMessage(row);
+		return (endMessage == null)?false:endMessage.startsWith(SUCCESS_MESSAGE);
 	}
 	public String getFailureMessage() {
-		return (this.endMessage != null && this.endMessage.startsWith(FAILURE_MESSAGE))?this.endMessage.substring(FAILURE_MESSAGE.length()+2):null ;
+		String endMessage = store.firstMessage(row);
+		return (endMessage != null && endMessage.startsWith(FAILURE_MESSAGE))?getEndMessage().substring(FAILURE_MESSAGE.length()+2):null ;
+	}
+	public String getEndMessage() {
+		return store.getMessage(row);
 	}
 	public String getEndTime() {
-		return this.endTime ;
+		return store.getTime(row, true);
 	}
 	public long getEndSeconds() {
-		return this.endSeconds ;
+		return store.endSecs[row];
 	}
 	
 	public long getTransferBytes() {
-		return this.transferSize ;
+		return store.bytes[row];
 	}
 	public int  getTransferSeconds() {
-		return (this.endSeconds > 0)?(int)(this.endSeconds-this.startSeconds):0;
+		return (getEndSeconds() > 0)?(int)(getEndSeconds()-getStartSeconds()):0;
+	}
+	public int  getResumeCount() {
+		return store.resumes[row];
+	}
+	public Properties getRequestDetails() {
+		return store.details[row];
 	}
 	
-	void pickupRequestDetails(Hashtable<Long, Properties> requests) {
+	void pickupRequestDetails(MirrorRequests requests) {
 		if(requests != null) {
-			Long searchSeconds = new Long(startSeconds);
-			Properties details = requests.get(searchSeconds);
-			while(details != null) {
-				String dest = details.getProperty(REQ_TARGET);
-				if(dest.equals(this.destinationPath)) {
-					this.requestDetails = details ;
-					details = null ;
-				} else
-					details = getNext(details);
-	}	}	}
+			Properties details = requests.find(getStartSeconds(), getDestination());
+			if(details != null) store.details[row] = details ;
+	}	}
 	
 	static boolean debugging = false ;
 	static boolean debugToError = false ;
@@ -265,8 +310,12 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 			else
 				System.err.println("(Debug) "+message);
 	}	}
+	static boolean logToError = false ; // stdout carries the --format output
 	static void log(String message) {
-		System.out.println(message);
+		if(logToError)
+			System.err.println(message);
+		else
+			System.out.println(message);
 	}
 	static void warn(String message) {
 		System.err.println("Warning: "+message);
@@ -329,14 +378,115 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 
 	final static String TIME_FORMAT = "##:##:##" ;
 	
+	static boolean leapYear(int year) {
+		return (year % 4) == 0 && ((year % 100) != 0 || (year % 400) == 0);
+	}
+	static long leapDaysSince2000(int year) { // Feb 29th days from 2000 up to (not including) year
+		long y = year - 1 ;
+		return (Math.floorDiv(y,4L) - Math.floorDiv(y,100L) + Math.floorDiv(y,400L)) - (1999/4 - 1999/100 + 1999/400);
+	}
+	
+	// Zone abbreviations as logged by ONTAP, with their offset to UTC; numeric offsets (+02:00, -0500) are read as such
+	final static String [] TIME_ZONES = {
+		"UTC", "GMT", "Z", "WET", "WEST", "BST", "CET", "CEST", "MET", "MEST", "EET", "EEST", "MSK", "SAST",
+		"EST", "EDT", "CST", "CDT", "MST", "MDT", "PST", "PDT", "AKST", "AKDT", "HST",
+		"JST", "KST", "SGT", "HKT", "AWST", "ACST", "ACDT", "AEST", "AEDT", "NZST", "NZDT"
+	};
+	final static int [] TIME_ZONE_MINUTES = {
+		0, 0, 0, 0, 60, 60, 60, 120, 60, 120, 120, 180, 180, 120,
+		-300, -240, -360, -300, -420, -360, -480, -420, -540, -480, -600,
+		540, 540, 480, 480, 480, 570, 630, 600, 660, 720, 780
+	};
+	final static int NO_ZONE = Integer.MIN_VALUE ;
+	
+	/** Offset to UTC in seconds of a time zone token, NO_ZONE if it is none. */
+	static int zoneSeconds(String bit) {
+		char sign = bit.charAt(0);
+		if(sign == '+' || sign == '-') {
+			String hash = hashNumbers(bit.substring(1));
+			int minutes = -1 ;
+			if("##:##".equals(hash))
+				minutes = Integer.parseInt(bit.substring(1,3)) * 60 + Integer.parseInt(bit.substring(4,6));
+			else
+			if("####".equals(hash))
+				minutes = Integer.parseInt(bit.substring(1,3)) * 60 + Integer.parseInt(bit.substring(3,5));
+			else
+			if("##".equals(hash))
+				minutes = Integer.parseInt(bit.substring(1,3)) * 60 ;
+			if(minutes >= 0 && minutes <= 14 * 60)
+				return ((sign == '-')?-minutes:minutes) * MIN_SECONDS ;
+		} else
+			for(int i=TIME_ZONES.length-1;i>=0;i--)
+				if(TIME_ZONES[i].equalsIgnoreCase(bit)) return TIME_ZONE_MINUTES[i] * MIN_SECONDS ;
+		return NO_ZONE ;
+	}
+	
+	/**
+	 * The last date converted: its text, where the HH:mm:ss is in it and the seconds at its midnight (00:00:00).
+	 * Log times come in long runs of the same day, so convertToSeconds() only reads the time of day when 
+	 * everything else of the text is the same. Immutable, so it can be shared by the parsing threads.
+	 */
+	static class DateBase
+	{
+		final String text ;
+		final int  clockIdx ;
+		final long midnight ;
+		
+		DateBase(String text, int clockIdx, long midnight) {
+			this.text = text ;
+			this.clockIdx = clockIdx ;
+			this.midnight = midnight ;
+		}
+		/** Seconds of dateTime when it only differs in the time of day, -1 otherwise. */
+		long convert(String dateTime) {
+			int len = text.length(), end = clockIdx + TIME_FORMAT.length();
+			if(dateTime.length() != len || !dateTime.regionMatches(end, text, end, len-end) || !dateTime.regionMatches(0, text, 0, clockIdx)) 
+				return -1L ;
+			int tHours = twoDigits(dateTime, clockIdx);
+			int tMins  = twoDigits(dateTime, clockIdx+3);
+			int tSecs  = twoDigits(dateTime, clockIdx+6);
+			if(tHours < 0 || tMins < 0 || tSecs < 0 || dateTime.charAt(clockIdx+2) != ':' || dateTime.charAt(clockIdx+5) != ':')
+				return -1L ;
+			if(tHours < 24 && tMins < 60 && (tSecs < 60 || (tHours == 23 && tMins == 59 && tSecs == 60)))
+				return midnight + tHours * HOUR_SECONDS + tMins * MIN_SECONDS + tSecs ;
+			return -1L ; // let the full conversion report it
+		}
+		static int twoDigits(String s, int idx) {
+			char c1 = s.charAt(idx), c2 = s.charAt(idx+1);
+			return (c1 >= '0' && c1 <= '9' && c2 >= '0' && c2 <= '9')?(c1 - '0') * 10 + (c2 - '0'):-1 ;
+		}
+	}
+	static volatile DateBase lastDate = null ;
+	
+	final static long NO_DATE = -1L ; // secondsOf(): not all parts [www MMM dd HH:mm:ss (TZ) YYYY]
+	final static long BAD_DAY = -2L ; // secondsOf(): no such day in the month
+	
 	static long convertToSeconds(String dateTime) {
+		long totalSeconds = secondsOf(dateTime);
+		if(totalSeconds == NO_DATE)
+			throw new IllegalArgumentException("Date string does not contain all required parts [www MMM dd HH:mm:ss (TZ) YYYY]: "+dateTime);
+		if(totalSeconds == BAD_DAY)
+			throw new IllegalArgumentException("Date string has an invalid day for month in: "+dateTime);
+		return totalSeconds ;
+	}
+	/** Seconds of a logged date like convertToSeconds(), but NO_DATE or BAD_DAY instead of an exception. */
+	static long secondsOf(String dateTime) {
+		DateBase last = lastDate ;
+		if(last != null) {
+			long totalSeconds = last.convert(dateTime);
+			if(totalSeconds >= 0L) {
+				if(debugging) dbg("CONV2SECS: "+totalSeconds+" seconds from "+dateTime+" (same date)");
+				return totalSeconds ;
+		}	}
+		
 		int weekDay  = -1 ;
 		int monthDay = 0 ;
 		int month    = 0 ;
 		int year     = 0 ;
+		int zone     = NO_ZONE ;
 		String timeS = null ;
 		int seconds  = -1 ;
-		StringBuilder restDump = new StringBuilder(); // timezone gets dumped here, and anything else not recognized
+		StringBuilder restDump = new StringBuilder(); // anything not recognized gets dumped here
 		StringTokenizer bits = new StringTokenizer(dateTime);
 		while(bits.hasMoreTokens()) {
 			String bit = bits.nextToken(); // expected order: weekday month day HH:mm:ss TZ YYYY  "Wed Jul  8 18:27:44 CEST 2020"
@@ -354,6 +504,10 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 					month = idx ;
 					continue ; // cut the loop short
 			}	}
+			if(zone == NO_ZONE) {
+				zone = zoneSeconds(bit);
+				if(zone != NO_ZONE) continue ;
+			}
 
 			// Numbers expected (or trash)
 			String hash = hashNumbers(bit);
@@ -391,35 +545,40 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 			restDump.append(' ');
 		}
 		if(year < 0 || month < 1 || monthDay < 1 || seconds < 0)
-			throw new IllegalArgumentException("Date string does not contain all required parts [www MMM dd HH:mm:ss (TZ) YYYY]: "+dateTime);
+			return NO_DATE ;
 
-		if(monthDay <= MONTH_LENGTHS[month-1] || ((year % 4) == 0 && month == 2 && monthDay == 29)) {
-			// number of extra days of Feb 29th over the years, including current year (!)
-			long totalSeconds = DAY_SECONDS * ((year - 1996)/4); 
-			
-			// seconds in days from years
-			if((year-2000) > Integer.MAX_VALUE / YEAR_SECONDS)
-				for(int y=0;y<year-2000;y++)
-					totalSeconds += YEAR_SECONDS ;
-			else
-				totalSeconds += YEAR_SECONDS * (year-2000);
+		if(monthDay <= MONTH_LENGTHS[month-1] || (leapYear(year) && month == 2 && monthDay == 29)) {
+			// days in the years since 2000, with their Feb 29th days
+			long totalSeconds = (long)YEAR_SECONDS * (year-2000) + (long)DAY_SECONDS * leapDaysSince2000(year); 
 			
 			// seconds in days from months since January
 			for(int mIdx = 1; mIdx < month; mIdx++)
 				totalSeconds += MONTH_LENGTHS[mIdx-1] * DAY_SECONDS ; // add the month days for each month
-			if((year % 4) == 0 && month <= 2)
-				totalSeconds -= DAY_SECONDS ; // subtract the four-yearly Feb 29th, since we have not past it yet
+			if(leapYear(year) && month > 2)
+				totalSeconds += DAY_SECONDS ; // this year's Feb 29th is past
 			
 			// Days since the 1st
 			totalSeconds += (monthDay-1) * DAY_SECONDS + seconds ;
+			
+			// to UTC, so durations across a DST change (CEST -> CET) are right
+			if(zone != NO_ZONE) totalSeconds -= zone ;
 
-			dbg("CONV2SECS: "+totalSeconds+" seconds from "+year+"/"+MONTH_NAMES[month-1]+"/"+((monthDay < 10)?"0":"")+monthDay+" "+timeS);
+			if(debugging) dbg("CONV2SECS: "+totalSeconds+" seconds from "+year+"/"+MONTH_NAMES[month-1]+"/"+((monthDay < 10)?"0":"")+monthDay+" "+timeS);
+			
+			int clockIdx = dateTime.indexOf(timeS); // only cache when that is the time token itself
+			int end = clockIdx + TIME_FORMAT.length();
+			if((clockIdx == 0 || dateTime.charAt(clockIdx-1) <= ' ') && (end == dateTime.length() || dateTime.charAt(end) <= ' '))
+				lastDate = new DateBase(dateTime, clockIdx, totalSeconds - seconds);
 			return totalSeconds ;
 		} else
-			throw new IllegalArgumentException("Date string has an invalid day for month "+MONTH_NAMES[month-1]+": "+monthDay+" in: "+dateTime);
+			return BAD_DAY ;
 	}
 	static String secondsToTime(int seconds) {
 		StringBuilder buf = new StringBuilder();
+		appendTime(buf, seconds);
+		return new String(buf);
+	}
+	static void appendTime(StringBuilder buf, int seconds) {
 		boolean indent = false ;
 		if(seconds >= DAY_SECONDS) {
 			int num = seconds/DAY_SECONDS;
@@ -447,7 +606,6 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		if(indent && seconds < 10) buf.append('0');
 		buf.append(seconds);
 		buf.append('s');
-		return new String(buf);
 	}
 	static char [] KBITS = {
 		' ', 'k', 'M', 'G', 'T'
@@ -532,7 +690,7 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 	}
 	static int indexOfOption(String option) {
 		for(int i=0;i < OPTIONS.length;i+=3)
-			if(OPTIONS[i].equals(option) || OPTIONS[i+1].equals(i)) return i / 3 ;
+			if(OPTIONS[i].equals(option) || OPTIONS[i+1].equals(option)) return i / 3 ;
 		return -1 ;
 	}
 	static void printOptions() {
@@ -550,11 +708,25 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 	}
 	
 	public static void main(String [] args) {
+		if(args != null)
+			for(int i=0;i+1 < args.length;i++)
+				if(args[i] != null && isOption(args[i]) && indexOfOption(getOption(args[i])) == 9 && MirrorWriter.isRecordFormat(args[i+1]))
+					logToError = true ; // before anything is logged
 		log(MIRRORSPEEDS_INFO);
 		
-		Hashtable<Long,Properties> infoIndex = null ;
+		MirrorRequests infoIndex = null ;
+		int tolerance = MirrorRequests.DEFAULT_TOLERANCE ;
 		Vector<File> logFiles = new Vector<File>();
+		Vector<File> mlogFiles = new Vector<File>();
 		boolean skipFailures = false ;
+		boolean parallel = false ;
+		boolean follow = false ;
+		MirrorStats stats = null ;
+		MirrorTimeline timeline = null ;
+		long maxMemory = 0L ;
+		MirrorMetrics metrics = null ;
+		String metricsAddress = null ;
+		String format = null ;
 		
 		if(args != null)
 			for(int i=0;i<args.length;i++)
@@ -588,11 +760,100 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 									File fl = new File(mlogFile);
 									if(!fl.exists() || !fl.isFile())
 										err("Given (XML) audit log file does not exist:\nFILE:\t"+fl.getAbsolutePath(), 50);
-									else {
-										if(infoIndex == null) infoIndex = new Hashtable<Long,Properties>();
-										int found = infoFromAuditMLog(fl, infoIndex);
-										log("Found "+found+" snapmirror-update requests in this Audit-MLog.");
-								}	}
+									else
+										mlogFiles.addElement(fl);
+								}
+								break ;
+							case 5:
+								parallel = true ;
+								break ;
+							case 6:
+								follow = true ;
+								break ;
+							case 7:
+								if(i+1 < args.length) try {
+									tolerance = Integer.parseInt(args[++i]);
+									if(tolerance < 0) throw new NumberFormatException("negative");
+								} catch(NumberFormatException nfx) {
+									err("Tolerance should be a number of seconds, not: "+args[i], 5);
+								}
+								break ;
+							case 8:
+								stats = new MirrorStats();
+								break ;
+							case 9:
+								if(i+1 < args.length) {
+									format = args[++i];
+									if(!MirrorWriter.isFormat(format))
+										err("Unknown output format: "+format+" (use text, csv, jsonl or bin)", 5);
+								}
+								break ;
+							case 10:
+							case 11:
+							case 12:
+							case 13:
+							case 14:
+								if(i+1 < args.length) try {
+									String value = args[++i];
+									if(filter == null) filter = new MirrorFilter();
+									if(optIdx == 10) filter.since = MirrorFilter.parseTime(value);
+									if(optIdx == 11) filter.until = MirrorFilter.parseTime(value);
+									if(optIdx == 12) filter.setDestination(value);
+									if(optIdx == 13) filter.setOperations(value);
+									if(optIdx == 14) filter.setStatuses(value);
+								} catch(IllegalArgumentException iax) {
+									err("Unusable filter "+args[i-1]+" "+args[i]+": "+iax.getMessage(), 5);
+								}
+								break ;
+							case 15:
+								if(i+1 < args.length) try {
+									long bucket = MirrorFilter.parseDuration(args[++i]);
+									if(bucket < 1L || bucket > Integer.MAX_VALUE) throw new IllegalArgumentException("out of range");
+									timeline = new MirrorTimeline(bucket);
+								} catch(IllegalArgumentException iax) {
+									err("Timeline bucket should be like 1m or 1h, not: "+args[i], 5);
+								}
+								break ;
+							case 16:
+								if(i+1 < args.length) try {
+									maxMemory = MirrorSpill.parseSize(args[++i]);
+								} catch(IllegalArgumentException iax) {
+									err("Memory should be like 512m or 2g, not: "+args[i], 5);
+								}
+								break ;
+							case 17:
+								if(i+1 < args.length) try {
+									metricsAddress = args[++i];
+									int port = Integer.parseInt(metricsAddress.substring(metricsAddress.lastIndexOf(':')+1));
+									if(port < 0 || port > 65535) throw new NumberFormatException("out of range");
+									metrics = new MirrorMetrics();
+								} catch(NumberFormatException nfx) {
+									err("Metrics should be served on [host:]port, not: "+args[i], 5);
+								}
+								break ;
+							case 18:
+								if(i+1 < args.length) try {
+									runStats = new MirrorRunStats(args[++i]);
+								} catch(IllegalArgumentException iax) {
+									err("Statistics should be text or json, not: "+args[i], 5);
+								}
+								break ;
+							case 19:
+								if(i+1 < args.length) try {
+									anomalies = new MirrorAnomalies(Integer.parseInt(args[++i]));
+								} catch(IllegalArgumentException iax) {
+									err("Anomalies should be a percentage of 1 to 99, like 80, not: "+args[i], 5);
+								}
+								break ;
+							case 20:
+								if(i+1 < args.length) try {
+									long threshold = MirrorFilter.parseDuration(args[++i]);
+									if(threshold < 1L) throw new IllegalArgumentException("not positive");
+									rpo = new MirrorRpo(threshold);
+								} catch(IllegalArgumentException iax) {
+									err("RPO threshold should be like 30m or 2h, not: "+args[i], 5);
+								}
+								break ;
 						}
 					} else {
 						File fobj = new File(args[i]);
@@ -606,130 +867,368 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 				}	}
 		if(logFiles.size() == 0)
 			err("Program requires at least one ONTAP SnapMirror Audit-log file as a parameter.");
+		if(mlogFiles.size() > 0) infoIndex = new MirrorRequests();
+		AuditMLogReader mlogReader = readAuditMLogs(mlogFiles, infoIndex, parallel);
+		if(infoIndex != null) infoIndex.tolerance = tolerance ;
+		MirrorWriter writer = null ;
+		try {
+			writer = MirrorWriter.create(format, System.out, follow);
+		} catch(IOException iox) {
+			err("I/O Error writing output: "+iox.toString(), 1);
+		}
 
-		Hashtable<String,MirrorSpeeds> destinationSpeeds = new Hashtable<String,MirrorSpeeds>(); // from destination
-		Hashtable<String,MirrorSpeeds>   operationSpeeds = new Hashtable<String,MirrorSpeeds>(); // from operation id
+		if(metrics != null && !follow)
+			err("Metrics are served while following (--follow) only.", 5);
+		if(maxMemory > 0L && follow)
+			err("The memory budget (--max-memory) is for reports only; following keeps just the transfers in flight.", 5);
+		if(follow) {
+			joinAuditMLogs(mlogReader);
+			if(metrics != null)
+				try {
+					metrics.serve(metricsAddress);
+				} catch(IOException iox) {
+					err("Cannot serve metrics at "+metricsAddress+": "+iox.toString(), 1);
+				}
+			new MirrorFollower(skipFailures, infoIndex, stats, timeline, metrics, writer).run(logFiles);
+			return ;
+		}
 		
-		for(int lf=0;lf < logFiles.size();lf++) {
-			File logFile = logFiles.elementAt(lf);
-			BufferedReader bread = null ;
+		MirrorStore store = new MirrorStore(); // operations by id and by destination
+		if(maxMemory > 0L) spill = new MirrorSpill(maxMemory, store);
+		
+		if(parallel)
+			loadLogFiles(logFiles, Runtime.getRuntime().availableProcessors(), store);
+		else
+			for(int lf=0;lf < logFiles.size();lf++)
+				loadLogFile(logFiles.elementAt(lf), store);
+		joinAuditMLogs(mlogReader);
+		
+		if(spill != null) {
 			try {
-				bread = new BufferedReader(new FileReader(logFile));
-				String line = null ;
-				while((line = bread.readLine()) != null) {
-					int idx = line.indexOf('['); // the operation name is just before
-					if(idx > 0) {
-						int preIdx = idx ;
-						while(preIdx > 0 && line.charAt(preIdx-1) != ' ') preIdx-- ;
-						if(preIdx > 0 && preIdx < idx-1) {
-							String   opCmd  = line.substring(preIdx, idx);				/** COMMAND **/
-							String dateTime = line.substring(0,preIdx).trim();			/** DATETIME ***/
-							
-							idx = line.indexOf("]:");
-							if(idx > 0) {
-								while(idx < line.length() && line.charAt(idx) != ' ') idx++ ;
-								if(idx < line.length()) {
-									Properties items = propertyItems(line.substring(idx));
-									if(items != null) {
-										String opId = items.getProperty(MIRROR_OP_ID);	/** OPERATION-ID **/
-										if(opId != null && opId.length() > 0) {
-											MirrorSpeeds existingOperation = operationSpeeds.get(opId);
-											String action = items.getProperty(MIRROR_ACTION); /** ACTION **/
-	
-											if(ACTION_START.equals(action)) {
-												String destPath = items.getProperty(MIRROR_DEST); /** DESTINATION **/
-												if(existingOperation == null && destPath != null)
-													try {
-														MirrorSpeeds newOperation = new MirrorSpeeds(opCmd, destPath, dateTime, opId);
-														operationSpeeds.put(opId, newOperation);
-														
-														existingOperation = destinationSpeeds.get(destPath);
-														if(existingOperation == null) 
-															destinationSpeeds.put(destPath, newOperation);
-														else
-															existingOperation.addEntry(newOperation); // hang in the queue
-													} catch(Exception x) {
-														err("Unable to create operation for '"+opCmd+"' Start action at "+dateTime+"\nEXCEPTION: "+x.toString());
-													}
-											} else
-											if(ACTION_RESUME.equals(action)) {
-												if(existingOperation != null && line.indexOf(RESUME_REQUIRED) > 0) {
-													existingOperation.resumeCount++ ;
-												}
-											} else
-											if(ACTION_END.equals(action)) {
-												if(existingOperation != null && !existingOperation.hasEnded()) {
-													String status = items.getProperty(MIRROR_STATUS);
-													if(SUCCESS_MESSAGE.equalsIgnoreCase(status)) {
-														String transfer = items.getProperty(MIRROR_XFR);
-														if(transfer != null && transfer.length() > 0) {
-															long xfrLen = -1L ;
-															try {
-																xfrLen = Long.parseLong(transfer);
-															} catch(NumberFormatException nmf) {
-																err("Unable to set operation '"+existingOperation.getOperation()+"' End action to Success at "+dateTime+"\nEXCEPTION: transfer length is not a number: "+transfer);
-															}
-															if(xfrLen >= 0L)
-																try { existingOperation.setSuccessEnd(dateTime, xfrLen); }
-																catch(Exception x) { err("Unable to set operation '"+existingOperation.getOperation()+"' End action to Success at "+dateTime+"\nEXCEPTION: "+x.toString()); }
-														} else {
-															try { existingOperation.setSuccessEnd(dateTime, -1L); }
-															catch(Exception x) { err("Unable to set operation '"+existingOperation.getOperation()+"' End action to Success at "+dateTime+"\nEXCEPTION: "+x.toString()); }
-														}
-													} else
-													if(FAILURE_MESSAGE.equalsIgnoreCase(status)) {
-														String msg = items.getProperty(MIRROR_MSG);
-														try { existingOperation.setFailureEnd(dateTime, msg); }
-														catch(Exception x) { err("Unable to set operation '"+existingOperation.getOperation()+"' End action to Failure at "+dateTime+"\nEXCEPTION: "+x.toString()+"\nMSG:\t"+msg); }
-													}
-												}
-											} else
-											if(action.startsWith(ACTION_INFO)) {
-												if(existingOperation != null) {
-													String msg = action.substring(ACTION_INFO.length()).trim();
-													if(msg.length() > 0) existingOperation.addInfoMessage(msg);
-							}	}	}	}	}	}
-					}	}
-				}
-				bread.close();
-				log("Total operations: "+operationSpeeds.size()+" after loading "+logFile.toString());
+				spill.report(writer, stats, timeline, skipFailures, infoIndex);
+				writer.flush();
 			} catch(IOException iox) {
-				err("I/O Error "+iox.toString()+" reading:\nFILE:\t"+logFile.getAbsolutePath());
-				if(bread != null) try { bread.close(); } catch(IOException closingException) { }
+				err("I/O Error writing output or spilled operations: "+iox.toString(), 1);
 			}
-		}
-		
+		} else
 		// Now we can output all the success transfer data and possibly to stats analysis on repeated transfer attempts
-		if(destinationSpeeds.size() > 0) {
-			Vector<String> destinations = new Vector<String>();
-			Enumeration<String> destNames = destinationSpeeds.keys();
-			while(destNames.hasMoreElements()) {
-				String dest = destNames.nextElement();
-				
-				// sort into Vector
-				int index = destinations.size();
-				while(index > 0 && destinations.elementAt(index-1).compareTo(dest) > 0) index-- ;
-				destinations.insertElementAt(dest, index);
+		if(store.operationCount() > 0) {
+			String [] destinations = new String [store.destinations.size()];
+			int destCount = 0 ;
+			for(int d=0;d < destinations.length;d++) {
+				String dest = store.destinations.name(d);
+				if(store.firstOf(dest) >= 0) destinations[destCount++] = dest ;
 			}
+			Arrays.sort(destinations, 0, destCount);
 			
-			for(int dIdx = 0;dIdx < destinations.size();dIdx ++) {
-				String dest = destinations.elementAt(dIdx);
-				log("Destination: "+dest);
+			try {
+				for(int dIdx = 0;dIdx < destCount;dIdx ++) {
+					String dest = destinations[dIdx];
+					writer.destination(dest);
+					
+					MirrorSpeeds ms = store.view(store.firstInOrder(dest)); // by start time
+					while(ms != null) {
+						report(ms, writer, stats, timeline, skipFailures, infoIndex);
+						ms = ms.nextEntry();
+					}
+				}
+				writer.flush();
+			} catch(IOException iox) {
+				err("I/O Error writing output: "+iox.toString(), 1);
+			}
+		}
+		if(stats != null) stats.print();
+		if(timeline != null) timeline.print();
+		if(anomalies != null) anomalies.print();
+		if(rpo != null) rpo.print();
+		problems.print();
+		if(runStats != null) runStats.print(store.rows);
+	}
+	
+	/**
+	 * Reads the audit-mlogs into the requests: right away (returns null), or with --parallel on a thread of
+	 * its own while the SnapMirror logs are parsed (returns it, to be joined before the requests are used).
+	 */
+	static AuditMLogReader readAuditMLogs(Vector<File> mlogFiles, MirrorRequests requests, boolean parallel) {
+		AuditMLogReader reader = new AuditMLogReader(mlogFiles, requests, !parallel);
+		if(!parallel || mlogFiles.size() == 0) {
+			reader.run();
+			return null ;
+		}
+		for(int f=0;f < mlogFiles.size();f++)
+			log("Scanning Audit-Mlog (XML) to store request info: "+mlogFiles.elementAt(f).toString());
+		reader.start();
+		return reader ;
+	}
+	static void joinAuditMLogs(AuditMLogReader reader) {
+		if(reader == null) return ;
+		try {
+			reader.join();
+		} catch(InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			err("Interrupted while reading the audit-mlogs.", 1);
+		}
+		for(int f=0;f < reader.found.length;f++)
+			log("Found "+reader.found[f]+" snapmirror-update requests in this Audit-MLog.");
+	}
+	static class AuditMLogReader extends Thread
+	{
+		final Vector<File> mlogFiles ;
+		final MirrorRequests requests ;
+		final boolean logging ; // as each file is read (not when on a thread of its own)
+		final int [] found ;
+
+		AuditMLogReader(Vector<File> mlogFiles, MirrorRequests requests, boolean logging) {
+			super("audit-mlog reader");
+			this.mlogFiles = mlogFiles ;
+			this.requests  = requests ;
+			this.logging   = logging ;
+			this.found = new int [mlogFiles.size()];
+		}
+		public void run() {
+			for(int f=0;f < mlogFiles.size();f++) {
+				if(logging) log("Scanning Audit-Mlog (XML) to store request info: "+mlogFiles.elementAt(f).toString());
+				found[f] = infoFromAuditMLog(mlogFiles.elementAt(f), requests);
+				if(logging) log("Found "+found[f]+" snapmirror-update requests in this Audit-MLog.");
+		}	}
+	}
+	
+	/** Takes one operation into the report: status filter, statistics, request details and output. */
+	static void report(MirrorSpeeds ms, MirrorWriter writer, MirrorStats stats, MirrorTimeline timeline, boolean skipFailures, MirrorRequests infoIndex) throws IOException {
+		if(filter != null && !filter.acceptsStatus(ms)) return ;
+		if(stats != null) stats.add(ms);
+		if(timeline != null) timeline.add(ms);
+		if(anomalies != null) anomalies.add(ms);
+		if(rpo != null) rpo.add(ms);
+		if(!skipFailures || ms.wasSuccess()) // the details only for what is written
+			write(ms, writer, infoIndex);
+	}
+	
+	/** Writes an operation with its request details (when there are audit-mlogs), timed with --stats. */
+	static void write(MirrorSpeeds ms, MirrorWriter writer, MirrorRequests infoIndex) throws IOException {
+		if(runStats == null) {
+			if(infoIndex != null) ms.pickupRequestDetails(infoIndex);
+			writer.write(ms);
+			return ;
+		}
+		long t = System.nanoTime();
+		if(infoIndex != null) {
+			ms.pickupRequestDetails(infoIndex);
+			long now = System.nanoTime();
+			runStats.request(now - t, ms.getRequestDetails() != null);
+			t = now ;
+		}
+		writer.write(ms);
+		runStats.add(MirrorRunStats.OUTPUT, System.nanoTime() - t, 1L);
+	}
+	
+	static ThreadLocal<MirrorFields> lineFields = new ThreadLocal<MirrorFields>() {
+		protected MirrorFields initialValue() {
+			return new MirrorFields();
+		}
+	};
+	/** Parses one SnapMirror audit-log line; null when the line carries no operation. No side effects. */
+	static MirrorEvent parseLine(String line) {
+		int idx = line.indexOf('['); // the operation name is just before
+		if(idx > 0) {
+			int preIdx = idx ;
+			while(preIdx > 0 && line.charAt(preIdx-1) != ' ') preIdx-- ;
+			if(preIdx > 0 && preIdx < idx-1) {
+				int cmdIdx = idx ;
+				idx = line.indexOf("]:");
+				if(idx > 0) {
+					while(idx < line.length() && line.charAt(idx) != ' ') idx++ ;
+					if(idx < line.length()) {
+						MirrorFields items = lineFields.get();
+						if(items.scan(line, idx, line.length())) {
+							MirrorEvent ev = new MirrorEvent();
+							ev.opCmd    = line.substring(preIdx, cmdIdx);			/** COMMAND **/
+							ev.dateTime = line.substring(0,preIdx).trim();			/** DATETIME ***/
+							ev.action   = items.get(MirrorFields.ACTION);		/** ACTION **/
+							ev.setId(items);						/** OPERATION-ID **/
+							ev.destPath = items.get(MirrorFields.DEST);		/** DESTINATION **/
+							ev.status   = items.get(MirrorFields.STATUS);
+							ev.transfer = items.get(MirrorFields.XFR);
+							ev.message  = items.get(MirrorFields.MSG);
+							if(ACTION_RESUME.equals(ev.action))
+								ev.resumeRequired = line.indexOf(RESUME_REQUIRED) > 0 ;
+							ev.convertTime();
+							return ev ;
+		}	}	}	}	}
+		return null ;
+	}
+	
+	/** 
+	 * Applies one parsed line to the operations in the store (by id and by destination), in log order.
+	 * Returns the operation when this line was its End, null otherwise.
+	 */
+	static MirrorSpeeds applyEvent(MirrorEvent ev, MirrorStore store) {
+		String opCmd    = ev.opCmd ;
+		String dateTime = ev.dateTime ;
+		String action   = ev.action ;
+		MirrorSpeeds existingOperation = store.view(store.rowOf(ev));
+
+		if(ACTION_START.equals(action)) {
+			String destPath = ev.destPath ;
+			if(filter != null && !filter.accepts(ev)) return null ; // when not already dropped by MirrorLogScanner
+			if(existingOperation == null && destPath != null) {
+				int problem = MirrorProblems.checkStart(opCmd, destPath, dateTime, ev.seconds, ev.opId);
+				if(problem != MirrorProblems.NONE) {
+					problems.add(problem, "'"+opCmd+"' Start action at "+dateTime+" for "+destPath);
+					return null ;
+				}
+				MirrorSpeeds newOperation = new MirrorSpeeds(store, opCmd, destPath, dateTime, ev.seconds, ev.opId);
+				store.index(ev, newOperation.row);
 				
-				MirrorSpeeds ms = destinationSpeeds.get(dest);
-				while(ms != null) {
-					if(infoIndex != null) ms.pickupRequestDetails(infoIndex);
+				if(store.byDestination)
+					store.append(newOperation.row); // hang in the queue of its destination
+			}
+		} else
+		if(ACTION_RESUME.equals(action)) {
+			if(existingOperation != null && ev.resumeRequired) {
+				existingOperation.addResume();
+			}
+		} else
+		if(ACTION_END.equals(action)) {
+			if(existingOperation != null && !existingOperation.hasEnded()) {
+				String status = ev.status ;
+				boolean success = SUCCESS_MESSAGE.equalsIgnoreCase(status);
+				if((success || FAILURE_MESSAGE.equalsIgnoreCase(status)) && (dateTime == null || ev.seconds < 0L)) {
+					problems.add(MirrorProblems.BAD_END_TIME, "'"+existingOperation.getOperation()+"' End action at "+dateTime+" for "+existingOperation.getDestination());
+					return null ;
+				}
+				if(success) {
+					String transfer = ev.transfer ;
+					if(transfer != null && transfer.length() > 0) {
+						long xfrLen = parseLength(transfer);
+						if(xfrLen >= 0L)
+							existingOperation.setSuccessEnd(dateTime, ev.seconds, xfrLen);
+						else
+							problems.add(MirrorProblems.BAD_TRANSFER, "'"+existingOperation.getOperation()+"' End action at "+dateTime+" for "+existingOperation.getDestination()+": "+transfer);
+					} else
+						existingOperation.setSuccessEnd(dateTime, ev.seconds, -1L);
+				} else
+				if(FAILURE_MESSAGE.equalsIgnoreCase(status))
+					existingOperation.setFailureEnd(dateTime, ev.seconds, ev.message);
+				if(existingOperation.hasEnded()) return existingOperation ;
+			}
+		} else
+		if(action != null && action.startsWith(ACTION_INFO)) {
+			if(existingOperation != null) {
+				String msg = action.substring(ACTION_INFO.length()).trim();
+				if(msg.length() > 0) existingOperation.addInfoMessage(msg);
+		}	}
+		return null ;
+	}
+	
+	/** Digits of a bytes_transferred value as a number, -1 when it is none (or too large for a long). */
+	static long parseLength(String transfer) {
+		int len = transfer.length();
+		if(len == 0) return -1L ;
+		long value = 0L ;
+		for(int i=0;i < len;i++) {
+			int digit = transfer.charAt(i) - '0' ;
+			if(digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10L) return -1L ;
+			value = value * 10L + digit ;
+		}
+		return value ;
+	}
+	
+	/** Applies an event; with --max-memory an ended operation goes to the spill records. */
+	static void apply(MirrorEvent ev, MirrorStore store) {
+		MirrorSpeeds ended = applyEvent(ev, store);
+		if(ended != null && spill != null)
+			try {
+				spill.add(ended);
+			} catch(IOException iox) {
+				err("I/O Error spilling operations into the temp directory: "+iox.toString(), 1);
+			}
+	}
+	
+	static void loadLogFile(File logFile, MirrorStore store) {
+		MirrorLogScanner scanner = null ;
+		try {
+			long begin = System.nanoTime(), applying = 0L ;
+			scanner = MirrorLogScanner.open(logFile);
+			MirrorEvent ev = null ;
+			while((ev = scanner.next()) != null)
+				if(runStats == null)
+					apply(ev, store);
+				else {
+					long t = System.nanoTime();
+					apply(ev, store);
+					applying += System.nanoTime() - t ;
+				}
+			scanner.close();
+			if(runStats != null) {
+				runStats.scanned(logFile, scanner, System.nanoTime() - begin - applying);
+				runStats.add(MirrorRunStats.APPLY, applying, scanner.events);
+			}
+			log("Total operations: "+(store.operationCount()+((spill == null)?0L:spill.count()))+" after loading "+logFile.toString());
+		} catch(IOException iox) {
+			err("I/O Error "+iox.toString()+" reading:\nFILE:\t"+logFile.getAbsolutePath());
+			if(scanner != null) try { scanner.close(); } catch(IOException closingException) { }
+		}
+	}
+	
+	/**
+	 * Parses the log files on a fork-join pool, but applies their events one file after the other, in the given order.
+	 * A large file is parsed as byte ranges that split at line ends (see MirrorLogFile.split), so one file
+	 * keeps all threads busy as well; the ranges are applied in file order. A Start in one range or (rotated)
+	 * file thereby still pairs with its Defer/Info/End in a later one, and the store ends up exactly as with
+	 * loadLogFile() per file. Only a window of ranges is parsed ahead.
+	 */
+	static void loadLogFiles(Vector<File> logFiles, int threads, MirrorStore store) {
+		Vector<MirrorLogFile> ranges = new Vector<MirrorLogFile>();
+		for(int lf=0;lf < logFiles.size() && threads > 1;lf++) {
+			File logFile = logFiles.elementAt(lf);
+			long rangeSize = Math.max(MirrorLogFile.MIN_RANGE, Math.min(MirrorLogFile.MAX_RANGE, logFile.length() / threads + 1));
+			ranges.addAll(MirrorLogFile.split(logFile, rangeSize));
+		}
+		if(threads > ranges.size()) threads = ranges.size();
+		if(threads <= 1) {
+			for(int lf=0;lf < logFiles.size();lf++)
+				loadLogFile(logFiles.elementAt(lf), store);
+			return ;
+		}
+		ExecutorService pool = new ForkJoinPool(threads);
+		Vector<Future<MirrorLogFile>> parsing = new Vector<Future<MirrorLogFile>>();
+		try {
+			for(int r=0;r < ranges.size();r++) {
+				while(parsing.size() < ranges.size() && parsing.size() <= r + 2*threads)
+					parsing.addElement(pool.submit(ranges.elementAt(parsing.size())));
 				
-					if(!skipFailures || ms.wasSuccess())
-						log("\t"+ms.toString().substring(dest.length()));
-					ms = ms.nextEntry();
+				MirrorLogFile parsed = null ;
+				try {
+					parsed = parsing.elementAt(r).get();
+				} catch(ExecutionException ex) {
+					Throwable cause = ex.getCause();
+					if(cause instanceof RuntimeException) throw (RuntimeException)cause ;
+					if(cause instanceof Error) throw (Error)cause ;
+					throw new RuntimeException(cause);
+				} catch(InterruptedException ix) {
+					Thread.currentThread().interrupt();
+					err("Interrupted while parsing:\nFILE:\t"+ranges.elementAt(r).file.getAbsolutePath());
+					return ;
 				}
+				parsing.setElementAt(null, r); // release the parsed events once applied
+				ranges.setElementAt(null, r);
+				
+				long begin = System.nanoTime();
+				for(int e=0;e < parsed.events.size();e++)
+					apply(parsed.events.elementAt(e), store);
+				if(runStats != null) runStats.add(MirrorRunStats.APPLY, System.nanoTime() - begin, parsed.events.size());
+				if(parsed.error != null)
+					err("I/O Error "+parsed.error.toString()+" reading:\nFILE:\t"+parsed.file.getAbsolutePath());
+				else
+				if(parsed.last)
+					log("Total operations: "+(store.operationCount()+((spill == null)?0L:spill.count()))+" after loading "+parsed.file.toString());
 			}
+		} finally {
+			pool.shutdownNow();
 		}
-		
 	}
 	
-	final static int DOUBLE_COLON_CAPACITY = 6 ;
 	final static String SNAP_UPDATE     = "snapmirror-update" ; // only pick the requests, not the results
 	final static String SNAP_UPDATE_XML = "<"+SNAP_UPDATE+">" ; // only pick the requests, not the results
 	
@@ -742,8 +1241,6 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 	final static String REQ_TARGET    = "Destination" ;
 	final static String REQ_SNAPSHOT  = "Snapshot" ;
 	
-	final static String REQ_NEXT      = "Next-Match" ;
-	
 	final static String [] REQUEST_ITEMS = {
 		REQ_DATETIME, REQ_TCP_SOURCE,
 		REQ_VSERVER , REQ_ACCOUNT,
@@ -757,21 +1254,6 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		"source-snapshot"
 	};
 	
-	static Hashtable <Integer, Properties> additionalIndex = new Hashtable <Integer, Properties>();
-	static Properties getNext(Properties previous) {
-		String hash = previous.getProperty(REQ_NEXT);
-		if(hash != null && hash.length() > 0) 
-			try {
-				Integer searchInt = new Integer(hash);
-				return additionalIndex.get(searchInt);
-			} catch(NumberFormatException nmf)  { }
-		return null ;
-	}
-	static void setNext(Properties previous, Properties next) {
-		int hash = next.hashCode();
-		additionalIndex.put(new Integer(hash), next);
-		previous.setProperty(REQ_NEXT, ""+hash);
-	}
 	static String toInfo(Properties details) {
 		String snap = details.getProperty(REQ_SNAPSHOT);
 		if(snap == null) return null ;
@@ -792,88 +1274,35 @@ public class MirrorSpeeds implements Comparable<MirrorSpeeds>
 		return new String(buf);
 	}
 	
-	static int infoFromAuditMLog(File fl, Hashtable<Long,Properties> store) {
+	/** Adds the snapmirror-update requests of an audit-mlog to the store, returns how many (see MirrorAuditScanner). */
+	static int infoFromAuditMLog(File fl, MirrorRequests store) {
 		if(fl    == null) throw new NullPointerException("Audit file required (null).");
 		if(store == null) throw new NullPointerException("Store for hash required (null).");
 		
-		BufferedReader bread = null ;
+		MirrorAuditScanner scanner = null ;
 		int count = 0 ;
 		try {
-			bread = new BufferedReader(new FileReader(fl));
-			log("Scanning Audit-Mlog (XML) to store request info: "+fl.toString());
-			String line = null ;
-			while((line = bread.readLine()) != null) {
-				if(line.indexOf(SNAP_UPDATE_XML) > 0) {
-					String [] parts = separate(line, " :: ");
-					if(parts != null && parts.length >= 5) {
-						// Date/Time
-						int i1 = indexOfWeekday(parts[0]);
-						int i2 = parts[0].indexOf('[');
-						if(i1 >= 0 && i2 >= 0 && i1 < i2) try {
-							String dateTime = parts[0].substring(i1, i2).trim();
-							long seconds = convertToSeconds(dateTime);
-							
-							Properties p = new Properties();
-							p.setProperty(REQ_DATETIME, dateTime);
-							i1 = parts[2].indexOf(':');
-							p.setProperty(REQ_TCP_SOURCE, (i1 > 0)?parts[2].substring(0,i1):parts[2]); // IP:Port
-							i1 = parts[3].indexOf(':');
-							if(i1 > 0) {
-								p.setProperty(REQ_VSERVER,  parts[3].substring(0,i1)); // VServer
-								p.setProperty(REQ_ACCOUNT, parts[3].substring(i1+1)); // Account
-							}
-							String xml = getXMLValue(parts[4], SNAP_UPDATE);
-							if(xml != null && xml.length() > 0) {
-								for(int i=XML_PARMS.length-1;i>=0;i--)
-									if(XML_PARMS[i] != null) {
-										String value = getXMLValue(xml, XML_PARMS[i]);
-										if(value != null) p.setProperty(REQUEST_ITEMS[i], value);
-									}
-								Properties old = store.put(new Long(seconds), p);
-								if(old != null) setNext(p, old); // insert into queue :)
-								count++ ;
-							}
-						} catch(Exception x) {
-							x.printStackTrace();
-						}
-			}	}	}
-			bread.close();
+			long begin = System.nanoTime();
+			scanner = MirrorAuditScanner.open(fl);
+			String [] request = null ;
+			while((request = scanner.nextRequest()) != null) {
+				String dateTime = request[MirrorAuditScanner.DATETIME];
+				long seconds = secondsOf(dateTime);
+				if(seconds < 0L)
+					problems.add(MirrorProblems.BAD_REQUEST_TIME, "request at "+dateTime+" in "+fl.getName());
+				else
+				if(!scanner.parameters)
+					problems.add(MirrorProblems.BAD_REQUEST, "request at "+dateTime+" in "+fl.getName());
+				else {
+					store.add(seconds, request);
+					count++ ;
+			}	}
+			scanner.close();
+			if(runStats != null) runStats.scanned(fl, scanner, count, System.nanoTime() - begin);
 		} catch(IOException iox) {
-			if(bread != null) try { bread.close(); } catch(IOException breadX) { }
+			if(scanner != null) try { scanner.close(); } catch(IOException closingException) { }
 			err("I/O Error reading from audit-mlog: "+iox.toString()+"\nFILE:\t"+fl.getAbsolutePath());
 		}
 		return count ;
 	}
-	static String getXMLValue(String xml, String name) {
-		String foo = "<" +name+">" ;
-		String bar = "</"+name+">" ;
-		int i1 = xml.indexOf(foo);
-		int i2 = xml.indexOf(bar);
-		if(i1 > 0 && i2 > 0 && i1 < i2) 
-			return xml.substring(i1+foo.length(), i2);
-		return null ;
-	}
-	
-	static Vector<String> items = new Vector<String>(DOUBLE_COLON_CAPACITY);
-	static String [] separate(String str, String sep) {
-		synchronized(items) {
-			int idx = -1, len = sep.length();
-			items.removeAllElements();
-			
-			// first bits
-			while((idx = str.indexOf(sep)) >= 0) {
-				String item = str.substring(0,idx).trim();
-				str = str.substring(idx+len);
-				if(item.length() > 0) items.addElement(item);
-			}
-			// last bit
-			str = str.trim();
-			if(str.length() > 0) items.addElement(str);
-			
-			if(items.size() > 0) {
-				String [] itemStr = new String [items.size()];
-				return items.toArray(itemStr);
-			}
-			return null ;
-	}	}
 }
\ No newline at end of file
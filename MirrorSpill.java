@@ -0,0 +1,257 @@
+import java.io.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+
+/**
+ * Bounded memory for the report (--max-memory): ended operations leave the store as soon as they end and
+ * are kept as records, which are sorted by destination, start time and log order and written to a run file
+ * in the temp directory whenever they take more than the budget. Only the operations still in flight stay
+ * in the store. The records carry the times and end messages as text, and the store drops those of a row
+ * when it is released (see MirrorStore), so neither the store nor the scratch store of the report keeps
+ * the messages of the operations gone. For the report the run files, the records left and the operations
+ * that never ended are merged k-way back into destination and start time order, one operation at a time.
+ * At most MAX_RUNS files are open in a merge: when there are more, they are first merged into fewer runs.
+ */
+class MirrorSpill
+{
+	final static int RECORD_OVERHEAD = 64 ; // bytes of a Record beyond its data
+	final static int READ_SIZE = 1 << 16 ;
+	final static int MAX_RUNS  = 64 ; // merged at a time, each with a READ_SIZE buffer
+	final static Comparator<Run> BY_HEAD = new Comparator<Run>() {
+		public int compare(Run r1, Run r2) {
+			return r1.head.compareTo(r2.head);
+		}
+	};
+
+	final long budget ; // bytes of records kept before spilling
+	final MirrorStore store ;
+	final Vector<File> runs = new Vector<File>();
+	Vector<Record> records = new Vector<Record>();
+	long used = 0L ;
+	long spilled = 0L ;
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+	final DataOutputStream data = new DataOutputStream(bytes);
+
+	MirrorSpill(long budget, MirrorStore store) {
+		this.budget = budget ;
+		this.store  = store ;
+		store.byDestination = false ; // the records are ordered instead
+	}
+
+	/** Budget of a --max-memory value: bytes, or with k, m or g. */
+	static long parseSize(String value) {
+		int unit = "kmg".indexOf(Character.toLowerCase(value.charAt(value.length()-1)));
+		long size = Long.parseLong((unit < 0)?value:value.substring(0, value.length()-1));
+		if(unit >= 0) size <<= 10 * (unit+1);
+		if(size < 1L) throw new IllegalArgumentException("Size should be positive: "+value);
+		return size ;
+	}
+
+	/** One operation as sort keys and its columns as bytes. */
+	static class Record implements Comparable<Record>
+	{
+		final String dest ;
+		final long startSecs, order ;
+		final byte [] data ;
+
+		Record(String dest, long startSecs, long order, byte [] data) {
+			this.dest = dest ;
+			this.startSecs = startSecs ;
+			this.order = order ;
+			this.data  = data ;
+		}
+		public int compareTo(Record r) {
+			int cmp = dest.compareTo(r.dest);
+			if(cmp != 0) return cmp ;
+			if(startSecs != r.startSecs) return (startSecs < r.startSecs)?-1:1 ;
+			return (order < r.order)?-1:((order == r.order)?0:1);
+		}
+	}
+
+	/** Takes an ended operation out of the store. */
+	void add(MirrorSpeeds ms) throws IOException {
+		Record record = record(ms.row);
+		store.release(ms.row);
+		records.addElement(record);
+		used += RECORD_OVERHEAD + record.data.length + 2 * record.dest.length();
+		if(used > budget) spill();
+	}
+
+	Record record(int row) throws IOException {
+		bytes.reset();
+		writeText(data, store.operations.name(store.opType[row]));
+		writeText(data, store.opIds[row]);
+		data.writeLong(store.startSecs[row]);
+		data.writeLong(store.endSecs[row]);
+		writeText(data, store.getTime(row, false));
+		String endTime = store.getTime(row, true);
+		data.writeBoolean(endTime != null);
+		if(endTime != null) writeText(data, endTime);
+		data.writeLong(store.bytes[row]);
+		data.writeInt(store.resumes[row]);
+		int messages = 0 ;
+		for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) messages++ ;
+		data.writeInt(messages);
+		for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry])
+			writeText(data, store.messages.name(store.entryMsg[entry]));
+		data.flush();
+		return new Record(store.destinations.name(store.dest[row]), store.startSecs[row], store.order[row], bytes.toByteArray());
+	}
+
+	/** Text as its UTF-8 length and bytes (writeUTF takes 65535 bytes at most, a message may be longer). */
+	static void writeText(DataOutput out, String text) throws IOException {
+		byte [] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+	static String readText(DataInput in) throws IOException {
+		byte [] utf8 = new byte [in.readInt()];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	/** Ended operations taken so far. */
+	long count() {
+		return spilled + records.size();
+	}
+
+	/** Writes the records kept, sorted, into a new run file. */
+	void spill() throws IOException {
+		Collections.sort(records);
+		File run = File.createTempFile("mirrorspeeds", ".run");
+		run.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), READ_SIZE));
+		try {
+			for(int r=0;r < records.size();r++) write(out, records.elementAt(r));
+		} finally {
+			out.close();
+		}
+		runs.addElement(run);
+		spilled += records.size();
+		MirrorSpeeds.log("Spilled "+records.size()+" ended operations into run "+runs.size()+": "+run.getPath());
+		records = new Vector<Record>();
+		used = 0L ;
+	}
+
+	static void write(DataOutputStream out, Record record) throws IOException {
+		writeText(out, record.dest);
+		out.writeLong(record.startSecs);
+		out.writeLong(record.order);
+		out.writeInt(record.data.length);
+		out.write(record.data);
+	}
+
+	/** Merges the first MAX_RUNS run files into one until the rest and the records kept fit one merge. */
+	void mergeRuns() throws IOException {
+		while(runs.size() >= MAX_RUNS) {
+			PriorityQueue<Run> heap = new PriorityQueue<Run>(MAX_RUNS, BY_HEAD);
+			for(int r=0;r < MAX_RUNS;r++) {
+				Run run = new Run(runs.remove(0));
+				if(run.head != null) heap.add(run);
+			}
+			File merged = File.createTempFile("mirrorspeeds", ".run");
+			merged.deleteOnExit();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), READ_SIZE));
+			try {
+				while(!heap.isEmpty()) {
+					Run run = heap.poll();
+					write(out, run.head);
+					run.advance();
+					if(run.head != null) heap.add(run);
+				}
+			} finally {
+				out.close();
+			}
+			runs.addElement(merged);
+			MirrorSpeeds.log("Merged "+MAX_RUNS+" runs into run "+runs.size()+": "+merged.getPath());
+	}	}
+
+	/** A sorted source of records: a run file, or the records in memory. */
+	static class Run
+	{
+		final File file ;
+		DataInputStream in ;
+		Vector<Record> kept ;
+		int next = 0 ;
+		Record head = null ;
+
+		Run(File file) throws IOException {
+			this.file = file ;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), READ_SIZE));
+			advance();
+		}
+		Run(Vector<Record> kept) throws IOException {
+			this.file = null ;
+			this.kept = kept ;
+			advance();
+		}
+		void advance() throws IOException {
+			if(kept != null) {
+				head = (next < kept.size())?kept.elementAt(next++):null ;
+				return ;
+			}
+			try {
+				String dest = readText(in);
+				long startSecs = in.readLong(), order = in.readLong();
+				byte [] data = new byte [in.readInt()];
+				in.readFully(data);
+				head = new Record(dest, startSecs, order, data);
+			} catch(EOFException eof) {
+				head = null ;
+				in.close();
+				file.delete();
+		}	}
+	}
+
+	/**
+	 * Writes all operations in report order: the runs, the records kept and the operations without End
+	 * (from the store) merged by a heap on their first records.
+	 */
+	void report(MirrorWriter writer, MirrorStats stats, MirrorTimeline timeline, boolean skipFailures, MirrorRequests infoIndex) throws IOException {
+		int [] unended = store.byOpId.rows();
+		for(int r=0;r < unended.length;r++) records.addElement(record(unended[r]));
+		Collections.sort(records);
+		mergeRuns();
+		if(runs.size() > 0) MirrorSpeeds.log("Merging "+runs.size()+" run(s) of "+spilled+" spilled operations with "+records.size()+" in memory.");
+
+		PriorityQueue<Run> heap = new PriorityQueue<Run>(runs.size()+1, BY_HEAD);
+		for(int r=0;r < runs.size();r++) {
+			Run run = new Run(runs.elementAt(r));
+			if(run.head != null) heap.add(run);
+		}
+		Run kept = new Run(records);
+		if(kept.head != null) heap.add(kept);
+		records = new Vector<Record>();
+
+		MirrorStore scratch = new MirrorStore(); // one row at a time, its messages go with it
+		scratch.byDestination = false ;
+		String dest = null ;
+		while(!heap.isEmpty()) {
+			Run run = heap.poll();
+			Record record = run.head ;
+			run.advance();
+			if(run.head != null) heap.add(run);
+			if(!record.dest.equals(dest)) {
+				dest = record.dest ;
+				writer.destination(dest);
+			}
+			MirrorSpeeds ms = restore(scratch, record);
+			MirrorSpeeds.report(ms, writer, stats, timeline, skipFailures, infoIndex);
+			scratch.release(ms.row);
+		}
+	}
+
+	static MirrorSpeeds restore(MirrorStore scratch, Record record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.data));
+		String operation = readText(in);
+		int row = scratch.add(operation, record.dest, readText(in));
+		scratch.startSecs[row] = in.readLong();
+		scratch.endSecs[row]   = in.readLong();
+		scratch.setTime(row, false, readText(in));
+		if(in.readBoolean()) scratch.setTime(row, true, readText(in));
+		scratch.bytes[row]   = in.readLong();
+		scratch.resumes[row] = in.readInt();
+		for(int m=in.readInt();m > 0;m--) scratch.addMessage(row, readText(in));
+		return scratch.view(row);
+	}
+}
@@ -0,0 +1,186 @@
+import java.util.* ;
+
+/**
+ * Statistics per destination and operation type (--summary), gathered in one pass over the operations:
+ * counts, bytes, transfer speed (min, max, mean) and the p50/p95/p99 of speed and duration of the
+ * successful transfers. Percentiles come from fixed size log-linear histograms instead of the samples,
+ * so memory does not grow with the number of transfers. Not thread safe.
+ */
+class MirrorStats
+{
+	final static double [] PERCENTILES = { 0.50, 0.95, 0.99 };
+
+	final MirrorSymbols destinations = new MirrorSymbols();
+	final MirrorSymbols operations   = new MirrorSymbols();
+	Group [][] groups = new Group [64][]; // by destinations id, then by operations id
+
+	/** Counts one operation (ended or not) into its group. */
+	void add(MirrorSpeeds ms) {
+		int d = destinations.id(ms.getDestination());
+		int o = operations.id(ms.getOperation());
+		if(d >= groups.length) groups = Arrays.copyOf(groups, Math.max(2*groups.length, d+1));
+		if(groups[d] == null) groups[d] = new Group [Math.max(8, o+1)];
+		if(o >= groups[d].length) groups[d] = Arrays.copyOf(groups[d], Math.max(2*groups[d].length, o+1));
+		if(groups[d][o] == null) groups[d][o] = new Group();
+		groups[d][o].add(ms);
+	}
+
+	/** Logs the groups sorted by destination and operation type. */
+	void print() {
+		MirrorSpeeds.log("Statistics per destination and operation (speed and duration of successful transfers):");
+		String [] dests = sortedNames(destinations);
+		String [] ops   = sortedNames(operations);
+		for(int dIdx=0;dIdx < dests.length;dIdx++) {
+			Group [] byOp = groups[destinations.find(dests[dIdx])];
+			MirrorSpeeds.log("Destination: "+dests[dIdx]);
+			for(int oIdx=0;oIdx < ops.length;oIdx++) {
+				int o = operations.find(ops[oIdx]);
+				if(o < byOp.length && byOp[o] != null)
+					MirrorSpeeds.log("\t"+byOp[o].toString(ops[oIdx]));
+	}	}	}
+
+	static String [] sortedNames(MirrorSymbols symbols) {
+		String [] names = new String [symbols.size()];
+		for(int i=0;i < names.length;i++) names[i] = symbols.name(i);
+		Arrays.sort(names);
+		return names ;
+	}
+
+	/** The numbers of one destination and operation type. */
+	static class Group
+	{
+		int  count = 0, success = 0, failure = 0 ;
+		long bytes = 0L ;
+		long minSpeed = Long.MAX_VALUE, maxSpeed = 0L ; // bytes per second
+		double speedSum = 0.0 ;
+		int  speeds = 0 ;
+		final Histogram speed    = new Histogram();
+		final Histogram duration = new Histogram();
+
+		void add(MirrorSpeeds ms) {
+			count++ ;
+			if(!ms.hasEnded()) return ;
+			if(!ms.wasSuccess()) {
+				failure++ ;
+				return ;
+			}
+			success++ ;
+			long size = ms.getTransferBytes();
+			int  secs = ms.getTransferSeconds();
+			if(size > 0L) bytes += size ;
+			if(secs >= 0) duration.add(secs);
+			if(size >= 0L && secs > 0) {
+				long bps = size / secs ;
+				if(bps < minSpeed) minSpeed = bps ;
+				if(bps > maxSpeed) maxSpeed = bps ;
+				speedSum += (double)size / (double)secs ;
+				speeds++ ;
+				speed.add(bps);
+		}	}
+
+		String toString(String operation) {
+			StringBuilder buf = new StringBuilder();
+			buf.append(operation);
+			buf.append(": count=");
+			buf.append(count);
+			buf.append(", success=");
+			buf.append(success);
+			buf.append(", failure=");
+			buf.append(failure);
+			buf.append(", bytes=");
+			buf.append(bytes);
+			buf.append(" (");
+			buf.append(MirrorSpeeds.adjustedSize(bytes));
+			buf.append(')');
+			if(speeds > 0) {
+				buf.append(", speed min=");
+				buf.append(MirrorSpeeds.transferSpeed(minSpeed, 1));
+				buf.append(" mean=");
+				buf.append(MirrorSpeeds.transferSpeed((long)(speedSum / speeds), 1));
+				buf.append(" max=");
+				buf.append(MirrorSpeeds.transferSpeed(maxSpeed, 1));
+				for(int p=0;p < PERCENTILES.length;p++) {
+					buf.append(" p");
+					buf.append((int)Math.round(100.0 * PERCENTILES[p]));
+					buf.append('=');
+					buf.append(MirrorSpeeds.transferSpeed(speed.percentile(PERCENTILES[p]), 1));
+			}	}
+			if(duration.count() > 0) {
+				buf.append(", duration");
+				for(int p=0;p < PERCENTILES.length;p++) {
+					buf.append(" p");
+					buf.append((int)Math.round(100.0 * PERCENTILES[p]));
+					buf.append('=');
+					buf.append(MirrorSpeeds.secondsToTime((int)duration.percentile(PERCENTILES[p])));
+			}	}
+			return new String(buf);
+		}
+	}
+
+	/**
+	 * Counts of non-negative values in log-linear buckets: exact below SUB_BUCKETS, above that SUB_BUCKETS
+	 * buckets per power of two, so a percentile is off by at most 1/SUB_BUCKETS of its value. The buckets
+	 * of a power of two are only allocated when a value falls in it, as the values seen mostly span a few.
+	 */
+	static class Histogram
+	{
+		final static int SUB_BITS    = 4 ;
+		final static int SUB_BUCKETS = 1 << SUB_BITS ;
+		final static int POWERS      = 64 - SUB_BITS + 1 ; // rows of SUB_BUCKETS buckets
+		final static int BUCKETS     = POWERS * SUB_BUCKETS ;
+
+		final long [][] counts = new long [POWERS][]; // by bucket / SUB_BUCKETS, null while empty
+		long total = 0L ;
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE ;
+
+		static int bucket(long value) {
+			if(value < SUB_BUCKETS) return (int)value ;
+			int power = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS
+			int sub = (int)(value >>> (power - SUB_BITS)) & (SUB_BUCKETS-1);
+			return (power - SUB_BITS + 1) * SUB_BUCKETS + sub ;
+		}
+		/** Lowest value of a bucket. */
+		static long lowest(int bucket) {
+			if(bucket < SUB_BUCKETS) return bucket ;
+			int power = bucket / SUB_BUCKETS + SUB_BITS - 1 ;
+			long sub = bucket % SUB_BUCKETS ;
+			return (1L << power) | (sub << (power - SUB_BITS));
+		}
+		static long width(int bucket) {
+			return (bucket < 2*SUB_BUCKETS)?1L:(1L << (bucket / SUB_BUCKETS - 1));
+		}
+
+		void add(long value) {
+			if(value < 0L) return ;
+			int b = bucket(value);
+			long [] row = counts[b / SUB_BUCKETS];
+			if(row == null) row = counts[b / SUB_BUCKETS] = new long [SUB_BUCKETS];
+			row[b % SUB_BUCKETS]++ ;
+			total++ ;
+			if(value < min) min = value ;
+			if(value > max) max = value ;
+		}
+		long count() {
+			return total ;
+		}
+		/** Value below which the given share (0..1) of the values is; the middle of its bucket. */
+		long percentile(double share) {
+			if(total == 0L) return 0L ;
+			long rank = (long)Math.ceil(share * total);
+			if(rank < 1L) rank = 1L ;
+			long seen = 0L ;
+			for(int b=0;b < BUCKETS;b++) {
+				long [] row = counts[b / SUB_BUCKETS];
+				if(row == null) {
+					b += SUB_BUCKETS-1 ; // the whole row is empty
+					continue ;
+				}
+				seen += row[b % SUB_BUCKETS];
+				if(seen >= rank) {
+					long value = lowest(b) + (width(b) - 1L) / 2L ;
+					return Math.max(min, Math.min(max, value));
+			}	}
+			return max ;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+import java.util.* ;
+
+/**
+ * Column store for the operations read from the SnapMirror logs: one row per operation, kept in
+ * primitive arrays. Operation type, destination and SVM are ids into shared symbol tables, the
+ * start and end times are a shared per-day text with the time of day cut out, and the end messages
+ * are lists of ids into a shared message dictionary. Day texts and messages are counted per use and
+ * dropped with the last row that uses them (see release), so a store whose ended rows are released
+ * (follow mode, --max-memory) only keeps those of the rows left. MirrorSpeeds objects are light views
+ * on a row.
+ * Not thread safe: rows are added and updated by one thread (see MirrorSpeeds.applyEvent).
+ */
+class MirrorStore
+{
+	final static int NONE = -1 ;
+	final static int INITIAL_ROWS = 1024 ;
+	final static char CLOCK_MARK = '\u0000' ; // where the HH:mm:ss goes back into a date text
+
+	final MirrorSymbols operations   = new MirrorSymbols();
+	final MirrorSymbols destinations = new MirrorSymbols();
+	final MirrorSymbols svms         = new MirrorSymbols();
+	final MirrorSymbols dates        = new MirrorSymbols(); // date/time texts with CLOCK_MARK for the time, counted
+	final MirrorSymbols messages     = new MirrorSymbols(); // counted
+
+	int rows = 0 ;
+	long added = 0L ;
+	String [] opIds    = new String [INITIAL_ROWS];
+	long   [] idHigh   = new long [INITIAL_ROWS]; // opIds as UUID, when uuid
+	long   [] idLow    = new long [INITIAL_ROWS];
+	boolean[] uuid     = new boolean [INITIAL_ROWS];
+	int    [] opType   = new int [INITIAL_ROWS];
+	int    [] dest     = new int [INITIAL_ROWS];
+	int    [] svm      = new int [INITIAL_ROWS];
+	long   [] startSecs = new long [INITIAL_ROWS];
+	long   [] endSecs   = new long [INITIAL_ROWS];
+	int    [] startDate = new int [INITIAL_ROWS]; // dates id
+	int    [] endDate   = new int [INITIAL_ROWS];
+	int    [] startClock = new int [INITIAL_ROWS]; // HHmmss as logged
+	int    [] endClock   = new int [INITIAL_ROWS];
+	long   [] bytes    = new long [INITIAL_ROWS];
+	int    [] resumes  = new int [INITIAL_ROWS];
+	int    [] msgFirst = new int [INITIAL_ROWS]; // message entries
+	int    [] msgLast  = new int [INITIAL_ROWS];
+	int    [] next     = new int [INITIAL_ROWS]; // next row of the same destination
+	long   [] order    = new long [INITIAL_ROWS]; // rows added before, for the log order of equal start times
+	Properties [] details = new Properties [INITIAL_ROWS];
+
+	int entries = 0 ;
+	int [] entryMsg  = new int [INITIAL_ROWS]; // messages id
+	int [] entryNext = new int [INITIAL_ROWS];
+
+	int freeRow   = NONE ; // released rows, linked by next
+	int freeEntry = NONE ; // released message entries, linked by entryNext
+
+	final MirrorOpTable byOpId = new MirrorOpTable();
+	int [] destHead = new int [64]; // first row per destinations id
+	int [] destTail = new int [64]; // last row per destinations id, so appending is O(1)
+	boolean [] destUnordered = new boolean [64]; // a row was appended with an earlier start than the one before
+	boolean byDestination = true ;  // chain the rows per destination (for the report at the end)
+
+	MirrorStore() {
+		Arrays.fill(destHead, NONE);
+		Arrays.fill(destTail, NONE);
+	}
+
+	/** Adds a row for a started operation; validation is up to the caller (see MirrorSpeeds). */
+	int add(String operation, String destPath, String opId) {
+		int row = freeRow ;
+		if(row >= 0)
+			freeRow = next[row];
+		else {
+			if(rows == opIds.length) grow(2*rows);
+			row = rows++ ;
+		}
+		opIds[row]  = opId ;
+		uuid[row]   = false ;
+		opType[row] = operations.id(operation);
+		dest[row]   = destinations.id(destPath);
+		int idx = destPath.indexOf(':');
+		svm[row]    = svms.id((idx >= 0)?destPath.substring(0,idx):destPath);
+		startSecs[row] = endSecs[row] = -1L ;
+		startDate[row] = endDate[row] = NONE ;
+		bytes[row]   = 0L ;
+		resumes[row] = 0 ;
+		msgFirst[row] = msgLast[row] = NONE ;
+		next[row]    = NONE ;
+		order[row]   = added++ ;
+		details[row] = null ;
+		return row ;
+	}
+
+	void grow(int size) {
+		opIds  = Arrays.copyOf(opIds, size);
+		idHigh = Arrays.copyOf(idHigh, size);
+		idLow  = Arrays.copyOf(idLow, size);
+		uuid   = Arrays.copyOf(uuid, size);
+		opType = Arrays.copyOf(opType, size);
+		dest   = Arrays.copyOf(dest, size);
+		svm    = Arrays.copyOf(svm, size);
+		startSecs  = Arrays.copyOf(startSecs, size);
+		endSecs    = Arrays.copyOf(endSecs, size);
+		startDate  = Arrays.copyOf(startDate, size);
+		endDate    = Arrays.copyOf(endDate, size);
+		startClock = Arrays.copyOf(startClock, size);
+		endClock   = Arrays.copyOf(endClock, size);
+		bytes    = Arrays.copyOf(bytes, size);
+		resumes  = Arrays.copyOf(resumes, size);
+		msgFirst = Arrays.copyOf(msgFirst, size);
+		msgLast  = Arrays.copyOf(msgLast, size);
+		next     = Arrays.copyOf(next, size);
+		order    = Arrays.copyOf(order, size);
+		details  = Arrays.copyOf(details, size);
+	}
+
+	/** Row of the operation of an event, NONE when not (yet) known. */
+	int rowOf(MirrorEvent ev) {
+		return ev.uuid?byOpId.get(ev.idHigh, ev.idLow):byOpId.get(ev.opId);
+	}
+	void index(MirrorEvent ev, int row) {
+		uuid[row] = ev.uuid ;
+		if(ev.uuid) {
+			idHigh[row] = ev.idHigh ;
+			idLow[row]  = ev.idLow ;
+			byOpId.put(ev.idHigh, ev.idLow, row);
+		} else
+			byOpId.put(ev.opId, row);
+	}
+	/** Drops a row that is no longer needed; it must not be chained per destination. */
+	void release(int row) {
+		if(uuid[row])
+			byOpId.remove(idHigh[row], idLow[row]);
+		else
+			byOpId.remove(opIds[row]);
+		freeMessages(row);
+		dates.release(startDate[row]);
+		dates.release(endDate[row]);
+		startDate[row] = endDate[row] = NONE ;
+		opIds[row]   = null ;
+		details[row] = null ;
+		next[row] = freeRow ;
+		freeRow = row ;
+	}
+	int operationCount() {
+		return byOpId.size();
+	}
+
+	/** First row of a destination (by name), NONE when it has none. */
+	int firstOf(String destPath) {
+		int id = destinations.find(destPath);
+		return (id < 0 || id >= destHead.length)?NONE:destHead[id];
+	}
+	void setFirst(int row) {
+		int id = dest[row];
+		ensureDestination(id);
+		destHead[id] = destTail[id] = row ;
+		destUnordered[id] = false ;
+	}
+	void ensureDestination(int id) {
+		if(id >= destHead.length) {
+			int old = destHead.length ;
+			destHead = Arrays.copyOf(destHead, Math.max(2*old, id+1));
+			destTail = Arrays.copyOf(destTail, destHead.length);
+			destUnordered = Arrays.copyOf(destUnordered, destHead.length);
+			Arrays.fill(destHead, old, destHead.length, NONE);
+			Arrays.fill(destTail, old, destHead.length, NONE);
+	}	}
+	/** Chains a row at the end of its destination; rows are appended in log order, so mostly by start time. */
+	void append(int row) {
+		int id = dest[row];
+		ensureDestination(id);
+		int tail = destTail[id];
+		if(tail < 0) {
+			setFirst(row);
+			return ;
+		}
+		next[tail] = row ;
+		next[row]  = NONE ;
+		destTail[id] = row ;
+		if(startSecs[row] < startSecs[tail]) destUnordered[id] = true ;
+	}
+
+	/**
+	 * First row of a destination with its chain in start time order, NONE when it has none. The chain is
+	 * made of runs in start order (one per log file, as files may be given out of order), which are
+	 * merged k-way by a heap on their first rows: O(n log k), and nothing to do in the usual single run.
+	 * Rows starting in the same second keep their log order.
+	 */
+	int firstInOrder(String destPath) {
+		int id = destinations.find(destPath);
+		if(id < 0 || id >= destHead.length) return NONE ;
+		if(!destUnordered[id]) return destHead[id];
+
+		int runs = 0 ;
+		int [] runHead = new int [8];
+		for(int row=destHead[id], prev=NONE;row >= 0;prev=row, row=next[row])
+			if(prev < 0 || startSecs[row] < startSecs[prev]) {
+				if(prev >= 0) next[prev] = NONE ; // cut the runs apart
+				if(runs == runHead.length) runHead = Arrays.copyOf(runHead, 2*runs);
+				runHead[runs++] = row ;
+			}
+		int [] heap = new int [runs]; // run indexes, the earliest head (then the earliest run) on top
+		for(int r=0;r < runs;r++) {
+			heap[r] = r ;
+			for(int h=r;h > 0 && before(runHead, heap[h], heap[(h-1)/2]);h=(h-1)/2) swap(heap, h, (h-1)/2);
+		}
+		int head = NONE, tail = NONE, size = runs ;
+		while(size > 0) {
+			int r = heap[0];
+			int row = runHead[r];
+			if(tail < 0) head = row ;
+			else next[tail] = row ;
+			tail = row ;
+			runHead[r] = next[row];
+			if(runHead[r] < 0) heap[0] = heap[--size];
+			for(int h=0;;) { // sift down
+				int c = 2*h+1 ;
+				if(c >= size) break ;
+				if(c+1 < size && before(runHead, heap[c+1], heap[c])) c++ ;
+				if(!before(runHead, heap[c], heap[h])) break ;
+				swap(heap, h, c);
+				h = c ;
+		}	}
+		next[tail] = NONE ;
+		destHead[id] = head ;
+		destTail[id] = tail ;
+		destUnordered[id] = false ;
+		return head ;
+	}
+	boolean before(int [] runHead, int r1, int r2) {
+		long s1 = startSecs[runHead[r1]], s2 = startSecs[runHead[r2]];
+		return s1 < s2 || (s1 == s2 && r1 < r2);
+	}
+	static void swap(int [] a, int i, int j) {
+		int t = a[i]; a[i] = a[j]; a[j] = t ;
+	}
+	/** Keeps a logged date/time of a row as shared date text and the HHmmss of the day. */
+	void setTime(int row, boolean end, String dateTime) {
+		int idx = MirrorSpeeds.hashNumbers(dateTime).indexOf(MirrorSpeeds.HMS);
+		int clock = 0 ;
+		for(int i=0;i < MirrorSpeeds.HMS.length();i++) {
+			char ch = dateTime.charAt(idx+i);
+			if(ch != ':') clock = clock * 10 + (ch - '0');
+		}
+		int date = dates.ref(dateTime.substring(0,idx)+CLOCK_MARK+dateTime.substring(idx+MirrorSpeeds.HMS.length()));
+		dates.release(end?endDate[row]:startDate[row]); // when set before
+		if(end) {
+			endDate[row]  = date ;
+			endClock[row] = clock ;
+		} else {
+			startDate[row]  = date ;
+			startClock[row] = clock ;
+		}
+	}
+	/** The date/time of a row as logged, null when not set. */
+	String getTime(int row, boolean end) {
+		int date = end?endDate[row]:startDate[row];
+		if(date < 0) return null ;
+		int clock = end?endClock[row]:startClock[row];
+		String text = dates.name(date);
+		int idx = text.indexOf(CLOCK_MARK);
+		StringBuilder buf = new StringBuilder(text.length() + MirrorSpeeds.HMS.length());
+		buf.append(text, 0, idx);
+		appendTwo(buf, clock / 10000);
+		buf.append(':');
+		appendTwo(buf, (clock / 100) % 100);
+		buf.append(':');
+		appendTwo(buf, clock % 100);
+		buf.append(text, idx+1, text.length());
+		return new String(buf);
+	}
+	static void appendTwo(StringBuilder buf, int num) {
+		buf.append((char)('0' + num / 10));
+		buf.append((char)('0' + num % 10));
+	}
+
+	/** Appends a message to the end messages of a row. */
+	void addMessage(int row, String message) {
+		int entry = freeEntry ;
+		if(entry >= 0)
+			freeEntry = entryNext[entry];
+		else {
+			if(entries == entryMsg.length) {
+				entryMsg  = Arrays.copyOf(entryMsg, 2*entries);
+				entryNext = Arrays.copyOf(entryNext, 2*entries);
+			}
+			entry = entries++ ;
+		}
+		entryMsg[entry]  = messages.ref(message);
+		entryNext[entry] = NONE ;
+		if(msgLast[row] < 0) msgFirst[row] = entry ;
+		else entryNext[msgLast[row]] = entry ;
+		msgLast[row] = entry ;
+	}
+	/** Replaces the end messages of a row by one message. */
+	void setMessage(int row, String message) {
+		freeMessages(row);
+		addMessage(row, message);
+	}
+	void freeMessages(int row) {
+		if(msgFirst[row] >= 0) {
+			for(int entry=msgFirst[row];entry >= 0;entry=entryNext[entry]) messages.release(entryMsg[entry]);
+			entryNext[msgLast[row]] = freeEntry ;
+			freeEntry = msgFirst[row];
+		}
+		msgFirst[row] = msgLast[row] = NONE ;
+	}
+	boolean hasMessage(int row) {
+		return msgFirst[row] >= 0 ;
+	}
+	String firstMessage(int row) {
+		return (msgFirst[row] < 0)?null:messages.name(entryMsg[msgFirst[row]]);
+	}
+	/** The end messages of a row joined by ';', null when none. */
+	String getMessage(int row) {
+		int entry = msgFirst[row];
+		if(entry < 0) return null ;
+		if(entryNext[entry] < 0) return messages.name(entryMsg[entry]);
+
+		StringBuilder buf = new StringBuilder();
+		while(entry >= 0) {
+			if(entry != msgFirst[row]) buf.append(';');
+			buf.append(messages.name(entryMsg[entry]));
+			entry = entryNext[entry];
+		}
+		return new String(buf);
+	}
+
+	MirrorSpeeds view(int row) {
+		return (row < 0)?null:new MirrorSpeeds(this, row);
+	}
+}
@@ -0,0 +1,65 @@
+import java.util.* ;
+
+/**
+ * Interns Strings as small int ids (0, 1, 2, ... in order of first use), so a column
+ * store keeps one int per row instead of a String. Ids taken with ref are counted, and
+ * a String is dropped (and its id used again) when release took its last use back.
+ * Not thread safe.
+ */
+class MirrorSymbols
+{
+	final HashMap<String,Integer> ids = new HashMap<String,Integer>();
+	String [] names = new String [64];
+	int size = 0 ;
+	int [] refs = null ;  // uses per id, when counted (see ref)
+	int [] freeIds = null ; // released ids, to be used again
+	int frees = 0 ;
+
+	/** Id of the given String, adding it when new. */
+	int id(String name) {
+		if(name == null) return MirrorStore.NONE ;
+		Integer id = ids.get(name);
+		if(id != null) return id.intValue();
+
+		if(frees > 0) {
+			int free = freeIds[--frees];
+			names[free] = name ;
+			ids.put(name, Integer.valueOf(free));
+			return free ;
+		}
+		if(size == names.length) names = Arrays.copyOf(names, 2*size);
+		names[size] = name ;
+		ids.put(name, Integer.valueOf(size));
+		return size++ ;
+	}
+	/** Id of the given String, adding it when new, counting one more use of it. */
+	int ref(String name) {
+		int id = id(name);
+		if(id < 0) return id ;
+		if(refs == null) refs = new int [names.length];
+		if(id >= refs.length) refs = Arrays.copyOf(refs, names.length);
+		refs[id]++ ;
+		return id ;
+	}
+	/** Takes back a use of an id (from ref); the String is dropped with its last use. */
+	void release(int id) {
+		if(id < 0 || --refs[id] > 0) return ;
+		ids.remove(names[id]);
+		names[id] = null ;
+		if(freeIds == null) freeIds = new int [64];
+		if(frees == freeIds.length) freeIds = Arrays.copyOf(freeIds, 2*frees);
+		freeIds[frees++] = id ;
+	}
+	/** Id of the given String, NONE when it is not known. */
+	int find(String name) {
+		Integer id = (name == null)?null:ids.get(name);
+		return (id == null)?MirrorStore.NONE:id.intValue();
+	}
+	String name(int id) {
+		return (id < 0)?null:names[id];
+	}
+	/** Ids handed out, released ones included. */
+	int size() {
+		return size ;
+	}
+}
@@ -0,0 +1,280 @@
+import java.text.* ;
+import java.util.* ;
+
+/**
+ * Concurrent transfers and aggregate bandwidth over time (--timeline): per time bucket the peak and average
+ * number of transfers in flight and the summed transfer speed, overall and per destination SVM, and the
+ * windows in which the overall concurrency was at its peak. A transfer is in flight from its start up to
+ * its end and moves its bytes at an even speed. The start and end times are sorted once (per SVM) and swept
+ * in time order, so n transfers take O(n log n). Every placed transfer is kept (28 bytes) until printed,
+ * also when following: the one store of follow mode that grows with the run, not with the transfers in
+ * flight. Times are printed in the time zones of the logged start times (so CET in winter and CEST in
+ * summer, as in the transfer lines), and the buckets are aligned to the first zone seen. Not thread safe.
+ */
+class MirrorTimeline
+{
+	final static int PEAK_WINDOWS = 10 ;
+
+	final long bucket ; // seconds
+	final MirrorSymbols svms = new MirrorSymbols();
+	long [] starts = new long [1024];
+	long [] ends   = new long [1024];
+	long [] bytes  = new long [1024]; // moved bytes, 0 when not known (failed)
+	int  [] svm    = new int  [1024];
+	int size = 0 ;
+	// the time zones of the start times as logged, with the first and last start seen in each
+	String [] zoneNames = new String [4];
+	String [] zoneKeys  = new String [4]; // " name ", to find the zone of a date text
+	int  [] zoneOffsets = new int  [4];   // seconds to UTC
+	long [] zoneFrom    = new long [4];
+	long [] zoneTo      = new long [4];
+	SimpleDateFormat [] zoneFormats = new SimpleDateFormat [4];
+	int zones = 0 ;
+
+	MirrorTimeline(long bucket) {
+		this.bucket = bucket ;
+	}
+
+	/** Takes an ended transfer into the timeline; the ones without both times cannot be placed. */
+	void add(MirrorSpeeds ms) {
+		if(!ms.hasEnded()) return ;
+		long start = ms.getStartSeconds(), end = ms.getEndSeconds();
+		if(start < 0L || end < start) return ;
+		if(size == starts.length) {
+			starts = Arrays.copyOf(starts, 2*size);
+			ends   = Arrays.copyOf(ends, 2*size);
+			bytes  = Arrays.copyOf(bytes, 2*size);
+			svm    = Arrays.copyOf(svm, 2*size);
+		}
+		String dest = ms.getDestination();
+		int colon = dest.indexOf(':');
+		starts[size] = start ;
+		ends[size]   = Math.max(end, start+1); // within the second still counts as in flight
+		bytes[size]  = (ms.wasSuccess() && ms.getTransferBytes() > 0L)?ms.getTransferBytes():0L ;
+		svm[size]    = svms.id((colon > 0)?dest.substring(0, colon):dest);
+		size++ ;
+		zone(ms.getStartTime(), start);
+	}
+
+	/** Notes the time zone of a logged start time; mostly the one of the start before. */
+	void zone(String dateTime, long seconds) {
+		int z = zones-1 ;
+		while(z >= 0 && dateTime.indexOf(zoneKeys[z]) < 0) z-- ;
+		if(z < 0) {
+			String name = null ;
+			int offset = MirrorSpeeds.NO_ZONE ;
+			StringTokenizer bits = new StringTokenizer(dateTime);
+			while(offset == MirrorSpeeds.NO_ZONE && bits.hasMoreTokens()) offset = MirrorSpeeds.zoneSeconds(name = bits.nextToken());
+			if(offset == MirrorSpeeds.NO_ZONE) return ; // taken as UTC, as convertToSeconds does
+			if(zones == zoneNames.length) {
+				zoneNames   = Arrays.copyOf(zoneNames, 2*zones);
+				zoneKeys    = Arrays.copyOf(zoneKeys, 2*zones);
+				zoneOffsets = Arrays.copyOf(zoneOffsets, 2*zones);
+				zoneFrom    = Arrays.copyOf(zoneFrom, 2*zones);
+				zoneTo      = Arrays.copyOf(zoneTo, 2*zones);
+				zoneFormats = Arrays.copyOf(zoneFormats, 2*zones);
+			}
+			z = zones++ ;
+			zoneNames[z]   = name ;
+			zoneKeys[z]    = " "+name+" " ;
+			zoneOffsets[z] = offset ;
+			zoneFrom[z] = zoneTo[z] = seconds ;
+		}
+		if(seconds < zoneFrom[z]) zoneFrom[z] = seconds ;
+		if(seconds > zoneTo[z]) zoneTo[z] = seconds ;
+	}
+	/** The zone of the starts nearest to the given time, -1 when no zone was logged. */
+	int zoneAt(long seconds) {
+		int nearest = -1 ;
+		long distance = Long.MAX_VALUE ;
+		for(int z=0;z < zones;z++) {
+			long d = (seconds < zoneFrom[z])?zoneFrom[z] - seconds:((seconds > zoneTo[z])?seconds - zoneTo[z]:0L);
+			if(d < distance) {
+				nearest = z ;
+				distance = d ;
+		}	}
+		return nearest ;
+	}
+
+	/** Logs the timeline overall, then per SVM (sorted by name), then the peak windows. */
+	void print() {
+		if(size == 0) {
+			MirrorSpeeds.log("Timeline: no ended transfers.");
+			return ;
+		}
+		int [] all = new int [size];
+		for(int i=0;i < size;i++) all[i] = i ;
+		Sweep overall = new Sweep(all, size);
+		MirrorSpeeds.log("Timeline per "+MirrorSpeeds.secondsToTime((int)bucket)+" (transfers in flight: peak and average, summed transfer speed):");
+		overall.run(true);
+
+		// counting sort of the transfers by SVM, then one sweep each
+		int [] offsets = new int [svms.size()+1];
+		for(int i=0;i < size;i++) offsets[svm[i]+1]++ ;
+		for(int s=0;s < svms.size();s++) offsets[s+1] += offsets[s];
+		int [] bySvm = new int [size];
+		int [] fill = Arrays.copyOf(offsets, offsets.length);
+		for(int i=0;i < size;i++) bySvm[fill[svm[i]]++] = i ;
+		String [] names = MirrorStats.sortedNames(svms);
+		for(int n=0;n < names.length;n++) {
+			int s = svms.find(names[n]);
+			int [] members = Arrays.copyOfRange(bySvm, offsets[s], offsets[s+1]);
+			MirrorSpeeds.log("Timeline of SVM "+names[n]+":");
+			new Sweep(members, members.length).run(false);
+		}
+
+		StringBuilder buf = new StringBuilder();
+		buf.append("Peak concurrency: ");
+		buf.append(overall.peak);
+		buf.append(" transfers in flight");
+		for(int w=0;w < overall.windows;w++) {
+			buf.append((w == 0)?" during ":", ");
+			buf.append(time(overall.windowStart[w]));
+			buf.append(" to ");
+			buf.append(time(overall.windowEnd[w]));
+			buf.append(" (");
+			buf.append(MirrorSpeeds.secondsToTime((int)(overall.windowEnd[w] - overall.windowStart[w])));
+			buf.append(')');
+		}
+		if(overall.moreWindows > 0) {
+			buf.append(" and ");
+			buf.append(overall.moreWindows);
+			buf.append(" more window(s)");
+		}
+		MirrorSpeeds.log(new String(buf));
+	}
+
+	SimpleDateFormat utcFormat = null ;
+	/** A time in the zone it was logged in, like 2020-12-01 02:00:00 CET (UTC when the logs have none). */
+	String time(long seconds) {
+		int z = zoneAt(seconds);
+		SimpleDateFormat format = (z < 0)?utcFormat:zoneFormats[z];
+		if(format == null) {
+			String name = (z < 0)?"UTC":zoneNames[z];
+			format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss '"+name.replace("'", "''")+"'", Locale.ENGLISH);
+			format.setTimeZone(new SimpleTimeZone((z < 0)?0:zoneOffsets[z] * 1000, name));
+			if(z < 0) utcFormat = format ;
+			else zoneFormats[z] = format ;
+		}
+		return format.format(new Date(MirrorWriter.epoch(seconds) * 1000L));
+	}
+
+	/**
+	 * One sweep over a set of transfers: the starts and the ends each sorted by time (as key time << 32 | index),
+	 * merged in time order, ends before starts of the same second. Between two events the number in flight
+	 * and the summed speed stay the same, so each piece is added to the buckets it covers.
+	 */
+	class Sweep
+	{
+		final long [] startKeys, endKeys ;
+		final long base ;
+		int peak = 0, windows = 0, moreWindows = 0 ;
+		final long [] windowStart = new long [PEAK_WINDOWS], windowEnd = new long [PEAK_WINDOWS];
+
+		// the bucket being filled
+		long bucketStart = Long.MIN_VALUE ;
+		int  bucketPeak = 0 ;
+		double inFlightSecs = 0.0, bucketBytes = 0.0 ;
+		StringBuilder line = new StringBuilder(96);
+
+		Sweep(int [] members, int count) {
+			long min = Long.MAX_VALUE ;
+			for(int m=0;m < count;m++) min = Math.min(min, starts[members[m]]);
+			base = min ;
+			startKeys = new long [count];
+			endKeys   = new long [count];
+			for(int m=0;m < count;m++) {
+				int i = members[m];
+				startKeys[m] = ((starts[i] - base) << 32) | i ;
+				endKeys[m]   = ((ends[i]   - base) << 32) | i ;
+			}
+			Arrays.sort(startKeys);
+			Arrays.sort(endKeys);
+		}
+
+		void run(boolean trackPeaks) {
+			int inFlight = 0 ;
+			double speed = 0.0 ; // bytes per second
+			int s = 0, e = 0 ;
+			long now = base ;
+			long peakFrom = -1L ; // start of the open window at the peak
+			while(e < endKeys.length) {
+				boolean end = s == startKeys.length || (endKeys[e] >>> 32) <= (startKeys[s] >>> 32);
+				long key = end?endKeys[e++]:startKeys[s++];
+				long time = base + (key >>> 32);
+				if(time > now) {
+					fill(now, time, inFlight, speed);
+					now = time ;
+				}
+				int i = (int)(key & 0xffffffffL);
+				double rate = (double)bytes[i] / (double)(ends[i] - starts[i]);
+				if(end) {
+					if(trackPeaks && inFlight == peak && peakFrom >= 0L) {
+						window(peakFrom, time);
+						peakFrom = -1L ;
+					}
+					inFlight-- ;
+					speed = (inFlight == 0)?0.0:speed - rate ; // no rounding left over
+				} else {
+					inFlight++ ;
+					speed += rate ;
+					if(inFlight > peak) {
+						peak = inFlight ;
+						windows = moreWindows = 0 ;
+						peakFrom = time ;
+					} else
+					if(inFlight == peak && peakFrom < 0L)
+						peakFrom = time ;
+			}	}
+			flush();
+		}
+
+		void window(long from, long to) {
+			if(windows > 0 && windowEnd[windows-1] == from) {
+				windowEnd[windows-1] = to ; // ends and starts in the same second
+				return ;
+			}
+			if(windows < PEAK_WINDOWS) {
+				windowStart[windows] = from ;
+				windowEnd[windows++] = to ;
+			} else
+				moreWindows++ ;
+		}
+
+		/** Adds [from, to) with the given number in flight and speed to the buckets it covers. */
+		void fill(long from, long to, int inFlight, double speed) {
+			if(inFlight == 0) return ; // idle buckets are not logged
+			long offset = (zones == 0)?0L:zoneOffsets[0]; // buckets of a day start at midnight in the logs
+			while(from < to) {
+				long bStart = Math.floorDiv(from + offset, bucket) * bucket - offset ;
+				if(bStart != bucketStart) {
+					flush();
+					bucketStart = bStart ;
+				}
+				long until = Math.min(to, bStart + bucket);
+				if(inFlight > bucketPeak) bucketPeak = inFlight ;
+				inFlightSecs += (double)inFlight * (until - from);
+				bucketBytes  += speed * (until - from);
+				from = until ;
+		}	}
+
+		/** Logs the bucket being filled, when anything was in flight during it. */
+		void flush() {
+			if(bucketStart != Long.MIN_VALUE && bucketPeak > 0) {
+				line.setLength(0);
+				line.append('\t');
+				line.append(time(bucketStart));
+				line.append(" peak=");
+				line.append(bucketPeak);
+				line.append(" average=");
+				line.append(Math.round(10.0 * inFlightSecs / bucket) / 10.0);
+				line.append(" speed=");
+				line.append(MirrorSpeeds.transferSpeed(Math.round(bucketBytes), (int)bucket));
+				MirrorSpeeds.log(new String(line));
+			}
+			bucketStart = Long.MIN_VALUE ;
+			bucketPeak = 0 ;
+			inFlightSecs = bucketBytes = 0.0 ;
+		}
+	}
+}
@@ -0,0 +1,579 @@
+import java.io.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+
+/**
+ * Output of the transfers: the text report (the lines of MirrorSpeeds.toString()) or, with --format csv|jsonl|bin,
+ * one machine readable record per transfer with the raw numbers (times as Unix epoch seconds, bytes, seconds).
+ * The fields are taken straight from the store row of a MirrorSpeeds and encoded into one reused byte buffer,
+ * which is written out when full (or on flush()). Not thread safe.
+ */
+abstract class MirrorWriter
+{
+	final static String [] FORMATS = { "text", "csv", "jsonl", "bin" };
+	final static long EPOCH_2000 = 946684800L ; // 2000-01-01 00:00:00 UTC in Unix seconds (see MirrorSpeeds.convertToSeconds)
+	final static int  BUFFER_SIZE = 1 << 16 ;
+
+	final static String STATUS_SUCCESS = "success" ;
+	final static String STATUS_FAILURE = "failure" ;
+	final static String STATUS_RUNNING = "running" ; // not ended (yet)
+
+	final static String [] REQUEST_FIELDS = { // Properties key in the request details, name in the output
+		MirrorSpeeds.REQ_SNAPSHOT,   "snapshot",
+		MirrorSpeeds.REQ_TCP_SOURCE, "host",
+		MirrorSpeeds.REQ_VSERVER,    "vserver",
+		MirrorSpeeds.REQ_ACCOUNT,    "account",
+		MirrorSpeeds.REQ_SOURCE,     "source"
+	};
+
+	static boolean isFormat(String format) {
+		for(int i=0;i < FORMATS.length;i++)
+			if(FORMATS[i].equalsIgnoreCase(format)) return true ;
+		return false ;
+	}
+	/** Writer for a format, the text report when null; wholeLines: text lines with the destination (follow mode). */
+	static MirrorWriter create(String format, OutputStream out, boolean wholeLines) throws IOException {
+		if("csv".equalsIgnoreCase(format))   return new Csv(out);
+		if("jsonl".equalsIgnoreCase(format)) return new JsonLines(out);
+		if("bin".equalsIgnoreCase(format))   return new Binary(out);
+		return new Text(out, wholeLines);
+	}
+	/** True for the machine readable formats, whose output must not be mixed with log messages. */
+	static boolean isRecordFormat(String format) {
+		return isFormat(format) && !"text".equalsIgnoreCase(format);
+	}
+
+	final OutputStream out ;
+	final byte [] buf = new byte [BUFFER_SIZE];
+	int len = 0 ;
+	final byte [] digits = new byte [20];
+
+	MirrorWriter(OutputStream out) {
+		if(out == null) throw new NullPointerException("Output stream required (null).");
+		this.out = out ;
+	}
+
+	/** Writes one record for the operation. */
+	abstract void write(MirrorSpeeds ms) throws IOException ;
+	/** Starts the operations of a destination (in the report). */
+	void destination(String destPath) throws IOException {
+	}
+
+	void flush() throws IOException {
+		if(len > 0) out.write(buf, 0, len);
+		len = 0 ;
+		out.flush();
+	}
+	void ensure(int room) throws IOException {
+		if(len + room > buf.length) {
+			out.write(buf, 0, len);
+			len = 0 ;
+	}	}
+
+	void put(int b) throws IOException {
+		ensure(1);
+		buf[len++] = (byte)b ;
+	}
+	void ascii(String s) throws IOException {
+		for(int i=0;i < s.length();i++) put(s.charAt(i));
+	}
+	/** A char as UTF-8 (surrogate pairs as the code point). */
+	int utf8(String s, int i) throws IOException {
+		int cp = s.codePointAt(i);
+		ensure(4);
+		if(cp < 0x80)
+			buf[len++] = (byte)cp ;
+		else
+		if(cp < 0x800) {
+			buf[len++] = (byte)(0xc0 | (cp >> 6));
+			buf[len++] = (byte)(0x80 | (cp & 0x3f));
+		} else
+		if(cp < 0x10000) {
+			buf[len++] = (byte)(0xe0 | (cp >> 12));
+			buf[len++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+			buf[len++] = (byte)(0x80 | (cp & 0x3f));
+		} else {
+			buf[len++] = (byte)(0xf0 | (cp >> 18));
+			buf[len++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+			buf[len++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+			buf[len++] = (byte)(0x80 | (cp & 0x3f));
+		}
+		return Character.charCount(cp);
+	}
+	/** A number in decimal, without a String. */
+	void number(long value) throws IOException {
+		number(value, 0);
+	}
+	/** A number in decimal, right aligned with spaces to width (like MirrorSpeeds.indent()). */
+	void number(long value, int width) throws IOException {
+		if(value == Long.MIN_VALUE) {
+			for(int i="-9223372036854775808".length();i < width;i++) put(' ');
+			ascii("-9223372036854775808");
+			return ;
+		}
+		boolean negative = value < 0L ;
+		if(negative) value = -value ;
+		int n = digits.length ;
+		do {
+			digits[--n] = (byte)('0' + (value % 10L));
+			value /= 10L ;
+		} while(value > 0L);
+		for(int i=digits.length - n + (negative?1:0);i < width;i++) put(' ');
+		if(negative) put('-');
+		ensure(digits.length - n);
+		System.arraycopy(digits, n, buf, len, digits.length - n);
+		len += digits.length - n ;
+	}
+
+	static String status(MirrorSpeeds ms) {
+		if(!ms.hasEnded()) return STATUS_RUNNING ;
+		return ms.wasSuccess()?STATUS_SUCCESS:STATUS_FAILURE ;
+	}
+	static long epoch(long seconds) {
+		return (seconds < 0L)?-1L:seconds + EPOCH_2000 ;
+	}
+
+	/**
+	 * The text report, byte for byte what printing MirrorSpeeds.toString() per line gives (in the report a tab
+	 * replaces the destination, which is in the header line), but written from the store row into the buffer
+	 * in one go: no line String, no tokenizer over the end messages, no lock and flush per line.
+	 */
+	static class Text extends MirrorWriter
+	{
+		final boolean wholeLines ;
+		final Charset charset = Charset.defaultCharset(); // what System.out encodes with
+		final boolean asciiBytes ; // ASCII chars are one byte each in the charset
+		final String  lineEnd = System.getProperty("line.separator");
+		final StringBuilder scratch = new StringBuilder(32);
+
+		Text(OutputStream out, boolean wholeLines) {
+			super(out);
+			this.wholeLines = wholeLines ;
+			String probe = "Destination: \t09AZaz" ;
+			byte [] probed = probe.getBytes(charset);
+			boolean same = probed.length == probe.length();
+			for(int i=0;same && i < probed.length;i++) same = probed[i] == probe.charAt(i);
+			asciiBytes = same ;
+		}
+
+		void destination(String destPath) throws IOException {
+			text("Destination: ");
+			text(destPath);
+			text(lineEnd);
+		}
+
+		void write(MirrorSpeeds ms) throws IOException {
+			MirrorStore store = ms.store ;
+			int row = ms.row ;
+			boolean debugging = MirrorSpeeds.debugging ;
+
+			if(wholeLines) text(ms.getDestination());
+			else put('\t');
+			put(' ');
+			time(store, row, false);
+			if(debugging) {
+				put('[');
+				number(ms.getStartSeconds());
+				put(']');
+			}
+			if(store.endDate[row] >= 0) {
+				int delta = (int)(ms.getEndSeconds() - ms.getStartSeconds());
+				if(delta >= 0) {
+					text(" to ");
+					time(store, row, true);
+					if(debugging) {
+						put('[');
+						number(ms.getEndSeconds());
+						put(']');
+				}	}
+				long transferSize = ms.getTransferBytes();
+				String opType = ms.getOperation();
+				if(transferSize < 0L) {
+					put(' ');
+					text(opType);
+				} else {
+					int handled = -1 ;
+					for(int ht=0;handled < 0 && ht < MirrorSpeeds.HANDLED_TYPES;ht++)
+						if(MirrorSpeeds.KNOWN_OPERATIONS[ht].equals(opType)) handled = ht ;
+
+					boolean infoAtEnd = false ;
+					for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) {
+						String msgs = store.messages.name(store.entryMsg[entry]);
+						for(int from=0, to=0;from < msgs.length();from = to+1) { // the ';' separated messages
+							to = msgs.indexOf(';', from);
+							if(to < 0) to = msgs.length();
+							if(to == from) continue ;
+							// every handled type tried before the one of the operation adds the message as is
+							boolean plain = to - from != MirrorSpeeds.SUCCESS_MESSAGE.length() || !msgs.startsWith(MirrorSpeeds.SUCCESS_MESSAGE, from);
+							for(int ht=(handled >= 0)?handled:MirrorSpeeds.HANDLED_TYPES;plain && ht > 0;ht--) {
+								put(' ');
+								text(msgs, from, to);
+							}
+							if(handled >= 0) {
+								text(MirrorSpeeds.SHOW_OPERATIONS[handled]);
+								if(msgs.startsWith(MirrorSpeeds.SUCCESS_MESSAGE, from))
+									success(ms, transferSize, debugging);
+								else
+								if(msgs.startsWith(MirrorSpeeds.FAILURE_MESSAGE, from)) {
+									text(" FAILED");
+									text(msgs, from + MirrorSpeeds.FAILURE_MESSAGE.length(), to);
+								} else
+									infoAtEnd = true ;
+					}	}	}
+					int resumeCount = ms.getResumeCount();
+					if(resumeCount > 0) {
+						text(" (");
+						number(resumeCount);
+						text(" resumes)");
+					}
+					if(infoAtEnd) // the other messages on lines of their own
+						for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) {
+							String msgs = store.messages.name(store.entryMsg[entry]);
+							for(int from=0, to=0;from < msgs.length();from = to+1) {
+								to = msgs.indexOf(';', from);
+								if(to < 0) to = msgs.length();
+								if(to == from || msgs.startsWith(MirrorSpeeds.SUCCESS_MESSAGE, from) || msgs.startsWith(MirrorSpeeds.FAILURE_MESSAGE, from)) continue ;
+								text("\n\t");
+								text(msgs, from, to);
+			}	}	}		}
+			text(lineEnd);
+		}
+
+		void success(MirrorSpeeds ms, long transferSize, boolean debugging) throws IOException {
+			text(" transferred ");
+			number(transferSize, 11);
+			text(" bytes (");
+			text(MirrorSpeeds.adjustedSize(transferSize), 8);
+			text(") in ");
+			int tSecs = ms.getTransferSeconds();
+			scratch.setLength(0);
+			MirrorSpeeds.appendTime(scratch, tSecs);
+			text(scratch, 11);
+			if(debugging) {
+				put('[');
+				number(tSecs, 6);
+				text(" seconds");
+				put(']');
+			}
+			text(", transfer-speed=");
+			text(MirrorSpeeds.transferSpeed(transferSize, tSecs), 10);
+
+			Properties requestDetails = ms.getRequestDetails();
+			if(requestDetails != null) { // as MirrorSpeeds.toInfo()
+				text(" REQ: ");
+				String snap = requestDetails.getProperty(MirrorSpeeds.REQ_SNAPSHOT);
+				if(snap == null)
+					text("null");
+				else {
+					text("Snapshot=");
+					text(snap);
+					String host = requestDetails.getProperty(MirrorSpeeds.REQ_TCP_SOURCE);
+					if(host != null) {
+						text(", Host=");
+						text(host);
+					}
+					String account = requestDetails.getProperty(MirrorSpeeds.REQ_ACCOUNT);
+					if(account != null) {
+						text("SVM-user=");
+						text(account);
+		}	}	}	}
+
+		/** A logged date/time of a row, from the shared date text and the HHmmss (see MirrorStore.getTime). */
+		void time(MirrorStore store, int row, boolean end) throws IOException {
+			String date = store.dates.name(end?store.endDate[row]:store.startDate[row]);
+			int clock = end?store.endClock[row]:store.startClock[row];
+			int idx = date.indexOf(MirrorStore.CLOCK_MARK);
+			text(date, 0, idx);
+			two(clock / 10000);
+			put(':');
+			two((clock / 100) % 100);
+			put(':');
+			two(clock % 100);
+			text(date, idx+1, date.length());
+		}
+		void two(int num) throws IOException {
+			put('0' + num / 10);
+			put('0' + num % 10);
+		}
+
+		void text(CharSequence s) throws IOException {
+			text(s, 0, s.length());
+		}
+		/** Right aligned with spaces to width, like MirrorSpeeds.indent(). */
+		void text(CharSequence s, int width) throws IOException {
+			for(int i=s.length();i < width;i++) put(' ');
+			text(s, 0, s.length());
+		}
+		void text(CharSequence s, int from, int to) throws IOException {
+			for(int i=from;i < to;i++) {
+				char ch = s.charAt(i);
+				if(ch < 0x80 && asciiBytes)
+					put(ch);
+				else { // encoded like System.out does
+					int end = (Character.isHighSurrogate(ch) && i+1 < to)?i+2:i+1 ;
+					byte [] encoded = s.subSequence(i, end).toString().getBytes(charset);
+					ensure(encoded.length);
+					System.arraycopy(encoded, 0, buf, len, encoded.length);
+					len += encoded.length ;
+					i = end-1 ;
+		}	}	}
+	}
+
+	/** Comma separated values with a header line; text fields are quoted when needed (RFC 4180). */
+	static class Csv extends MirrorWriter
+	{
+		Csv(OutputStream out) throws IOException {
+			super(out);
+			ascii("destination,operation,operation_id,start,end,bytes,seconds,resumes,status,message");
+			for(int i=1;i < REQUEST_FIELDS.length;i+=2) {
+				put(',');
+				ascii(REQUEST_FIELDS[i]);
+			}
+			put('\n');
+		}
+		void write(MirrorSpeeds ms) throws IOException {
+			MirrorStore store = ms.store ;
+			int row = ms.row ;
+			boolean ended = ms.hasEnded();
+			text(ms.getDestination());
+			put(',');
+			text(ms.getOperation());
+			put(',');
+			text(ms.getOperationId());
+			put(',');
+			number(epoch(ms.getStartSeconds()));
+			put(',');
+			if(ended) number(epoch(ms.getEndSeconds()));
+			put(',');
+			if(ms.getTransferBytes() >= 0L) number(ms.getTransferBytes());
+			put(',');
+			if(ended) number(ms.getTransferSeconds());
+			put(',');
+			number(ms.getResumeCount());
+			put(',');
+			ascii(status(ms));
+			put(',');
+			if(store.msgFirst[row] >= 0) {
+				put('"');
+				for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) {
+					if(entry != store.msgFirst[row]) put(';');
+					quoted(store.messages.name(store.entryMsg[entry]));
+				}
+				put('"');
+			}
+			Properties details = ms.getRequestDetails();
+			for(int i=0;i < REQUEST_FIELDS.length;i+=2) {
+				put(',');
+				if(details != null) text(details.getProperty(REQUEST_FIELDS[i]));
+			}
+			put('\n');
+		}
+		void text(String s) throws IOException {
+			if(s == null) return ;
+			boolean quote = false ;
+			for(int i=0;!quote && i < s.length();i++) {
+				char ch = s.charAt(i);
+				quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r' ;
+			}
+			if(quote) put('"');
+			quoted(s);
+			if(quote) put('"');
+		}
+		void quoted(String s) throws IOException { // the inside of a quoted field
+			for(int i=0;i < s.length();) {
+				if(s.charAt(i) == '"') put('"');
+				i += utf8(s, i);
+		}	}
+	}
+
+	/** One JSON object per line; fields without a value are left out. */
+	static class JsonLines extends MirrorWriter
+	{
+		JsonLines(OutputStream out) {
+			super(out);
+		}
+		void write(MirrorSpeeds ms) throws IOException {
+			MirrorStore store = ms.store ;
+			int row = ms.row ;
+			boolean ended = ms.hasEnded();
+			ascii("{\"destination\":");
+			text(ms.getDestination());
+			ascii(",\"operation\":");
+			text(ms.getOperation());
+			ascii(",\"operation_id\":");
+			text(ms.getOperationId());
+			ascii(",\"start\":");
+			number(epoch(ms.getStartSeconds()));
+			if(ended) {
+				ascii(",\"end\":");
+				number(epoch(ms.getEndSeconds()));
+			}
+			if(ms.getTransferBytes() >= 0L) {
+				ascii(",\"bytes\":");
+				number(ms.getTransferBytes());
+			}
+			if(ended) {
+				ascii(",\"seconds\":");
+				number(ms.getTransferSeconds());
+			}
+			ascii(",\"resumes\":");
+			number(ms.getResumeCount());
+			ascii(",\"status\":\"");
+			ascii(status(ms));
+			put('"');
+			if(store.msgFirst[row] >= 0) {
+				ascii(",\"message\":[");
+				for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) {
+					if(entry != store.msgFirst[row]) put(',');
+					text(store.messages.name(store.entryMsg[entry]));
+				}
+				put(']');
+			}
+			Properties details = ms.getRequestDetails();
+			if(details != null) {
+				ascii(",\"request\":{");
+				boolean first = true ;
+				for(int i=0;i < REQUEST_FIELDS.length;i+=2) {
+					String value = details.getProperty(REQUEST_FIELDS[i]);
+					if(value == null) continue ;
+					if(!first) put(',');
+					first = false ;
+					put('"');
+					ascii(REQUEST_FIELDS[i+1]);
+					ascii("\":");
+					text(value);
+				}
+				put('}');
+			}
+			ascii("}\n");
+		}
+		void text(String s) throws IOException {
+			put('"');
+			for(int i=0;i < s.length();) {
+				char ch = s.charAt(i);
+				if(ch == '"' || ch == '\\') {
+					put('\\');
+					put(ch);
+					i++ ;
+				} else
+				if(ch < ' ') {
+					ascii("\\u00");
+					put(Character.forDigit(ch >> 4, 16));
+					put(Character.forDigit(ch & 0xf, 16));
+					i++ ;
+				} else
+					i += utf8(s, i);
+			}
+			put('"');
+		}
+	}
+
+	/**
+	 * Compact binary records: the header "MSP1", then records starting with a tag byte.
+	 * STRING (1): UTF-8 length and bytes; the strings are numbered 0, 1, 2, ... in the order they appear.
+	 * TRANSFER (2): destination, operation (string numbers), operation id (length and bytes), start, end,
+	 * bytes, seconds (zigzag, -1 when not known), resumes, status (0 running, 1 success, 2 failure),
+	 * the number of messages and their string numbers, the number of request details and per detail the
+	 * string numbers of name and value. Numbers are unsigned LEB128 varints; times are Unix epoch seconds.
+	 * RESET (3): the strings are forgotten and numbered from 0 again; written before a transfer once there
+	 * are MAX_STRINGS, so the table (here and in a reader) stays bounded while following.
+	 */
+	static class Binary extends MirrorWriter
+	{
+		final static byte [] MAGIC = { 'M', 'S', 'P', '1' };
+		final static int STRING   = 1 ;
+		final static int TRANSFER = 2 ;
+		final static int RESET    = 3 ;
+		final static int MAX_STRINGS = 1 << 16 ;
+
+		MirrorSymbols strings = new MirrorSymbols();
+		int [] refs = new int [16];
+
+		Binary(OutputStream out) throws IOException {
+			super(out);
+			for(int i=0;i < MAGIC.length;i++) put(MAGIC[i]);
+		}
+		void write(MirrorSpeeds ms) throws IOException {
+			MirrorStore store = ms.store ;
+			int row = ms.row ;
+			boolean ended = ms.hasEnded();
+			Properties details = ms.getRequestDetails();
+
+			if(strings.size() >= MAX_STRINGS) { // messages and request details do not all repeat
+				put(RESET);
+				strings = new MirrorSymbols();
+			}
+			// the strings first, so a reader knows them when it gets to the transfer
+			int n = 0 ;
+			refs = ref(refs, n++, ms.getDestination());
+			refs = ref(refs, n++, ms.getOperation());
+			for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry])
+				refs = ref(refs, n++, store.messages.name(store.entryMsg[entry]));
+			if(details != null)
+				for(int i=0;i < REQUEST_FIELDS.length;i+=2) {
+					String value = details.getProperty(REQUEST_FIELDS[i]);
+					if(value == null) continue ;
+					refs = ref(refs, n++, REQUEST_FIELDS[i+1]);
+					refs = ref(refs, n++, value);
+				}
+
+			put(TRANSFER);
+			varint(refs[0]);
+			varint(refs[1]);
+			string(ms.getOperationId());
+			varint(zigzag(epoch(ms.getStartSeconds())));
+			varint(zigzag(ended?epoch(ms.getEndSeconds()):-1L));
+			varint(zigzag(ms.getTransferBytes()));
+			varint(zigzag(ended?ms.getTransferSeconds():-1L));
+			varint(ms.getResumeCount());
+			put(!ended?0:(ms.wasSuccess()?1:2));
+			int r = 2 ;
+			int messages = 0 ;
+			for(int entry=store.msgFirst[row];entry >= 0;entry=store.entryNext[entry]) messages++ ;
+			varint(messages);
+			for(int m=0;m < messages;m++) varint(refs[r++]);
+			varint((n - r) / 2);
+			while(r < n) varint(refs[r++]);
+		}
+		/** Keeps the number of a string at refs[i], writing the string first when it is new. */
+		int [] ref(int [] refs, int i, String s) throws IOException {
+			if(i == refs.length) refs = Arrays.copyOf(refs, 2*i);
+			int id = strings.find(s);
+			if(id < 0) {
+				id = strings.id(s);
+				put(STRING);
+				string(s);
+			}
+			refs[i] = id ;
+			return refs ;
+		}
+		void string(String s) throws IOException {
+			int utf8Len = 0 ;
+			for(int i=0;i < s.length();i++) {
+				char ch = s.charAt(i);
+				if(ch < 0x80) utf8Len += 1 ;
+				else
+				if(ch < 0x800) utf8Len += 2 ;
+				else
+				if(Character.isHighSurrogate(ch) && i+1 < s.length() && Character.isLowSurrogate(s.charAt(i+1))) {
+					utf8Len += 4 ;
+					i++ ;
+				} else
+					utf8Len += 3 ;
+			}
+			varint(utf8Len);
+			for(int i=0;i < s.length();) i += utf8(s, i);
+		}
+		void varint(long value) throws IOException {
+			ensure(10);
+			while((value & ~0x7fL) != 0L) {
+				buf[len++] = (byte)((value & 0x7f) | 0x80);
+				value >>>= 7 ;
+			}
+			buf[len++] = (byte)value ;
+		}
+		static long zigzag(long value) {
+			return (value << 1) ^ (value >> 63);
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package mirrorspeeds ;
+
+import org.openjdk.jmh.profile.* ;
+import org.openjdk.jmh.runner.* ;
+import org.openjdk.jmh.runner.options.* ;
+
+/**
+ * Runs the MirrorSpeeds benchmarks with the GC profiler, so each result comes with gc.alloc.rate.norm
+ * (bytes allocated per operation - per line for MirrorLoadBench) next to the time.
+ * Usage: java -cp target/benchmarks.jar MirrorBench [JMH options, like a benchmark name pattern]
+ */
+public class MirrorBench
+{
+	public static void main(String [] args) throws Exception {
+		CommandLineOptions given = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(given).addProfiler(GCProfiler.class);
+		if(given.getIncludes().isEmpty()) options.include("mirrorspeeds\\.Mirror.*Bench\\.");
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,68 @@
+package mirrorspeeds ;
+
+import java.io.* ;
+import java.util.* ;
+
+/**
+ * Sample SnapMirror audit-log and audit-mlog lines for the benchmarks, like the logs of a cluster with a few
+ * dozen destinations: every operation has a Start and an End, some have Info and Defer lines in between.
+ * Seeded, so every run measures the same lines.
+ */
+class MirrorBenchData
+{
+	final static String [] OPERATIONS = { "ScheduledUpdate", "ManualUpdate", "DelayedUpdate", "Initialize" };
+	final static String [] WEEKDAYS = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+	final static String [] MONTHS   = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+	final static String SUCCESS_PAYLOAD = "Operation-Uuid=c2ce6f44-7ed4-d57b-1e2f-eb89414c343c Group=none Operation-Cookie=0 action=End source=src:vol4 destination=svm_dr:vol4 status=Success bytes_transferred=55129191346 network_compression_ratio=1.0:1 transfer_desc=Logical Transfer" ;
+	final static String MLOG_LINE = "00000005.00f3e5d2 0a3b6c2e Sat Oct 31 20:00:27 CET 2020 [kern_audit:info:2113] 8503e80000123456 :: cl01:ontapi :: 10.1.1.7:5432 :: svm_dr:admin :: <netapp version='1.0'><snapmirror-update><source-location>src:vol4</source-location><destination-location>svm_dr:vol4</destination-location><source-snapshot>snap.4</source-snapshot></snapmirror-update></netapp> :: Pending" ;
+
+	/** Date/time as logged ("Sat Oct 31 20:00:28 CET 2020") for seconds after 2020-10-31 00:00 (a Saturday). */
+	static String dateTime(long seconds) {
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ENGLISH);
+		cal.clear();
+		cal.set(2020, Calendar.OCTOBER, 31);
+		cal.add(Calendar.SECOND, (int)seconds);
+		return String.format(Locale.ENGLISH, "%s %s %02d %02d:%02d:%02d CET %d",
+			WEEKDAYS[cal.get(Calendar.DAY_OF_WEEK)-1], MONTHS[cal.get(Calendar.MONTH)], cal.get(Calendar.DAY_OF_MONTH),
+			cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND), cal.get(Calendar.YEAR));
+	}
+
+	/** About the given number of log lines, in time order. */
+	static Vector<String> logLines(int count, long seed) {
+		Random random = new Random(seed);
+		TreeMap<Long,String> lines = new TreeMap<Long,String>(); // by time and order
+		long n = 0L ;
+		for(int op=0;lines.size() < count;op++) {
+			String operation = OPERATIONS[random.nextInt(OPERATIONS.length)];
+			String dest = (random.nextInt(4) == 0)?"svm2_dr:data"+random.nextInt(8):"svm_dr:vol"+random.nextInt(40);
+			String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+			long start = op * 30L + random.nextInt(30);
+			long end = start + 1 + random.nextInt(20000);
+			String pre = " "+operation+"[Oct 31 00:00:00]:"+uuid.substring(0,8)+" Operation-Uuid="+uuid+" Group=none Operation-Cookie=0 " ;
+			lines.put(start * 1000000L + n++, dateTime(start)+pre+"action=Start source=src:"+dest.substring(dest.indexOf(':')+1)+" destination="+dest);
+			if(random.nextInt(10) == 0)
+				lines.put((start+6) * 1000000L + n++, dateTime(start+6)+pre+"action=Info Transfer is waiting for resources");
+			if(random.nextInt(5) == 0)
+				lines.put((start+5) * 1000000L + n++, dateTime(start+5)+pre+"action=Defer source=src:x destination="+dest+" message=CSM: An operation did not complete within the specified timeout window.");
+			if(random.nextInt(10) == 0)
+				lines.put(end * 1000000L + n++, dateTime(end)+pre+"action=End source=src:x destination="+dest+" status=Failure message=Failed");
+			else
+				lines.put(end * 1000000L + n++, dateTime(end)+pre+"action=End source=src:x destination="+dest+" status=Success bytes_transferred="+(random.nextLong() >>> 28)+" network_compression_ratio=1.0:1 transfer_desc=Logical Transfer");
+		}
+		return new Vector<String>(lines.values());
+	}
+
+	/** A temporary log file with the lines, removed when the JVM exits. */
+	static File logFile(Vector<String> lines) throws IOException {
+		File fl = File.createTempFile("mirrorspeeds-bench", ".log");
+		fl.deleteOnExit();
+		Writer out = new BufferedWriter(new FileWriter(fl));
+		for(int i=0;i < lines.size();i++) {
+			out.write(lines.elementAt(i));
+			out.write('\n');
+		}
+		out.close();
+		return fl ;
+	}
+}
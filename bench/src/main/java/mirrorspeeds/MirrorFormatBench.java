@@ -0,0 +1,52 @@
+package mirrorspeeds ;
+
+import java.io.* ;
+import java.util.concurrent.* ;
+import org.openjdk.jmh.annotations.* ;
+
+/** Formatting of one transfer of the report. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MirrorFormatBench
+{
+	MirrorSpeeds transfer ;
+	MirrorWriter text ;
+	long size = 55129191346L ;
+	int  secs = 12440 ;
+
+	@Setup
+	public void setup() throws IOException {
+		MirrorStore store = new MirrorStore();
+		transfer = new MirrorSpeeds(store, "ScheduledUpdate", "svm_dr:vol4", "Sat Oct 31 20:00:28 CET 2020", -1L, "c2ce6f44-7ed4-d57b-1e2f-eb89414c343c");
+		transfer.addResume();
+		transfer.setSuccessEnd("Sat Oct 31 23:27:48 CET 2020", size);
+		text = MirrorWriter.create("text", new OutputStream() { // measures the formatting, not the output
+			public void write(int b) {
+			}
+			public void write(byte [] buf, int off, int len) {
+			}
+		}, false);
+	}
+
+	@Benchmark
+	public String toStringLine() {
+		return transfer.toString();
+	}
+	@Benchmark
+	public String adjustedSize() {
+		return MirrorSpeeds.adjustedSize(size);
+	}
+	@Benchmark
+	public String transferSpeed() {
+		return MirrorSpeeds.transferSpeed(size, secs);
+	}
+	@Benchmark
+	public int textWriter() throws IOException {
+		text.write(transfer);
+		return text.len ;
+	}
+}
@@ -0,0 +1,36 @@
+package mirrorspeeds ;
+
+import java.io.* ;
+import java.util.concurrent.* ;
+import org.openjdk.jmh.annotations.* ;
+
+/** Scanning and applying a whole log file; the numbers are per line (time and gc.alloc.rate.norm). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MirrorLoadBench
+{
+	final static int LINES = 200000 ;
+
+	File logFile ;
+
+	@Setup
+	public void setup() throws IOException {
+		logFile = MirrorBenchData.logFile(MirrorBenchData.logLines(LINES, 7L));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int loadLogFile() throws IOException {
+		MirrorStore store = new MirrorStore();
+		MirrorLogScanner scanner = MirrorLogScanner.open(logFile);
+		MirrorEvent ev = null ;
+		while((ev = scanner.next()) != null)
+			MirrorSpeeds.applyEvent(ev, store);
+		scanner.close();
+		return store.operationCount();
+	}
+}
@@ -0,0 +1,72 @@
+package mirrorspeeds ;
+
+import java.nio.* ;
+import java.nio.charset.* ;
+import java.util.* ;
+import java.util.concurrent.* ;
+import org.openjdk.jmh.annotations.* ;
+
+/** The per-line parsing helpers of MirrorSpeeds, one call per operation. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MirrorParseBench
+{
+	final static int SAMPLES = 1024 ; // power of two
+
+	String [] sameDate  = new String [SAMPLES]; // times of one day: the cached date path
+	String [] otherDate = new String [SAMPLES]; // a new day every time: the full conversion
+	String [] lines ;
+	String payload ;
+	MirrorAuditScanner mlog ;
+	int mlogLength ;
+	int next = 0 ;
+
+	@Setup
+	public void setup() {
+		for(int i=0;i < SAMPLES;i++) {
+			sameDate[i]  = MirrorBenchData.dateTime(i * 37L);
+			otherDate[i] = MirrorBenchData.dateTime(i * 86400L + i * 37L);
+		}
+		Vector<String> logLines = MirrorBenchData.logLines(SAMPLES, 13L);
+		lines = logLines.subList(0, SAMPLES).toArray(new String [SAMPLES]);
+		payload = MirrorBenchData.SUCCESS_PAYLOAD ;
+		byte [] mlogLine = MirrorBenchData.MLOG_LINE.getBytes(StandardCharsets.UTF_8);
+		mlog = new MirrorAuditScanner(ByteBuffer.wrap(mlogLine));
+		mlogLength = mlogLine.length ;
+	}
+
+	int next() {
+		return next = (next + 1) & (SAMPLES-1) ;
+	}
+
+	@Benchmark
+	public long convertToSecondsSameDate() {
+		return MirrorSpeeds.convertToSeconds(sameDate[next()]);
+	}
+	@Benchmark
+	public long convertToSecondsOtherDate() {
+		String dateTime = otherDate[next()];
+		MirrorSpeeds.lastDate = null ; // as with the first line of a new day
+		return MirrorSpeeds.convertToSeconds(dateTime);
+	}
+	@Benchmark
+	public String hashNumbers() {
+		return MirrorSpeeds.hashNumbers(sameDate[next()]);
+	}
+	@Benchmark
+	public Properties propertyItems() {
+		return MirrorSpeeds.propertyItems(payload);
+	}
+	@Benchmark
+	public String [] scanRequest() {
+		return mlog.scanRequest(mlog.region, 0, mlogLength);
+	}
+	@Benchmark
+	public MirrorEvent parseLine() {
+		return MirrorSpeeds.parseLine(lines[next()]);
+	}
+}